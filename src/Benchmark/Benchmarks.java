@@ -0,0 +1,51 @@
+/**
+ * The Benchmarks class runs the microbenchmarks of the project with the Harness and prints their results.
+ * The benchmarks whose name matches the regular expression given as the first argument are run, all of them
+ * otherwise, once for each number of threads of -Dpaxos.bench.threads (1,4).
+ * What the servers print while the benchmarks run is discarded; formatting it is still measured.
+ */
+package Benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class Benchmarks {
+
+	private static final String THREADS = System.getProperty("paxos.bench.threads", "1,4");
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args An optional regular expression selecting benchmarks by name.
+	 * @throws Exception If a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		Pattern filter = Pattern.compile(args.length > 0 ? args[0] : ".*");
+		List<Microbenchmark> benchmarks = new ArrayList<>();
+		benchmarks.addAll(StoreBenchmarks.all());
+		benchmarks.addAll(CodecBenchmarks.all());
+		benchmarks.addAll(LoggerBenchmarks.all());
+		benchmarks.addAll(ConsensusBenchmarks.all());
+
+		PrintStream report = System.out;
+		Harness harness = new Harness(report);
+		harness.printHeader();
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (Microbenchmark benchmark : benchmarks) {
+				if (!filter.matcher(benchmark.getName()).find()) {
+					continue;
+				}
+				for (String threads : THREADS.split(",")) {
+					harness.run(benchmark, Integer.parseInt(threads.trim()));
+				}
+			}
+		} finally {
+			System.setOut(report);
+		}
+		// The servers of the consensus benchmarks leave daemon threads behind
+		System.exit(0);
+	}
+}
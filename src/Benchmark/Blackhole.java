@@ -0,0 +1,33 @@
+/**
+ * The Blackhole class consumes the results of a benchmarked operation, so that the JIT compiler cannot
+ * prove them unused and remove the work that produced them.
+ */
+package Benchmark;
+
+public final class Blackhole {
+
+	/** Never equal to a consumed value in practice; a match only writes to a field nobody reads. */
+	private final long sentinel = System.nanoTime() ^ 0x5DEECE66DL;
+	private volatile long sink;
+	private volatile Object objectSink;
+
+	/**
+	 * Consumes a primitive result.
+	 * @param value The result.
+	 */
+	public void consume(long value) {
+		if (value == sentinel) {
+			sink = value;
+		}
+	}
+
+	/**
+	 * Consumes an object result.
+	 * @param value The result.
+	 */
+	public void consume(Object value) {
+		if (value != null && System.identityHashCode(value) == (int) sentinel) {
+			objectSink = value;
+		}
+	}
+}
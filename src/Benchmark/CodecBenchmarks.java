@@ -0,0 +1,80 @@
+/**
+ * The CodecBenchmarks class measures the encoding of the messages exchanged by the servers: the batches
+ * carried by the accept and commit phases, the frames of the NIO transport, and the responses.
+ */
+package Benchmark;
+
+import Compute.Batch;
+import Compute.BatchCodec;
+import Compute.BufferPool;
+import Compute.Response;
+import Compute.RpcCodec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+public final class CodecBenchmarks {
+
+	/** The number of operations of the batches encoded, the default maximum batch size. */
+	private static final int BATCH_SIZE = 64;
+
+	private CodecBenchmarks() {
+	}
+
+	/**
+	 * Returns the benchmarks of the codecs.
+	 * @return The benchmarks.
+	 */
+	public static List<Microbenchmark> all() {
+		int[] keys = new int[BATCH_SIZE];
+		int[] values = new int[BATCH_SIZE];
+		int[] actions = new int[BATCH_SIZE];
+		long[] responses = new long[BATCH_SIZE];
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			keys[i] = i * 7919;
+			values[i] = i;
+			actions[i] = 2;
+			responses[i] = Response.of(Response.STORED, i);
+		}
+		Batch batch = new Batch(keys, values, actions);
+		byte[] frame = BatchCodec.encode(batch);
+		return Arrays.asList(
+				new Microbenchmark("codec.encodeBatch") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						blackhole.consume(BatchCodec.encode(batch));
+					}
+				},
+				new Microbenchmark("codec.decodeBatch") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						blackhole.consume(BatchCodec.decodeBatch(frame));
+					}
+				},
+				new Microbenchmark("codec.putFrame") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						ByteBuffer request = new RpcCodec.Writer(thread, RpcCodec.PUT).putInt(thread).putInt(thread).toFrame();
+						blackhole.consume(request.remaining());
+						BufferPool.release(request);
+					}
+				},
+				new Microbenchmark("codec.responsesFrame") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						ByteBuffer reply = new RpcCodec.Writer(thread, RpcCodec.OK).putLongs(responses).toFrame();
+						reply.position(Integer.BYTES + Integer.BYTES + 1);
+						blackhole.consume(RpcCodec.getLongs(reply));
+						BufferPool.release(reply);
+					}
+				},
+				new Microbenchmark("codec.response") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						long response = Response.of(Response.FOUND, (int) System.nanoTime());
+						blackhole.consume(Response.statusOf(response) + Response.valueOf(response));
+					}
+				});
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * The ConsensusBenchmarks class measures operations decided end to end by a cluster of three servers
+ * running in this process on a SimulatedNetwork without latency or losses, so that the cost measured is
+ * that of the servers rather than of a network.
+ * Each thread proposes distinct keys, either straight to the proposer of Server1 or through its batcher.
+ */
+package Benchmark;
+
+import Compute.Batch;
+import Compute.BatchCodec;
+import Server.IKVStoreServer;
+import Simulation.SimulatedCluster;
+
+import java.util.Arrays;
+import java.util.List;
+
+public final class ConsensusBenchmarks {
+
+	/** The number of servers of the cluster. */
+	private static final int CLUSTER_SIZE = Integer.getInteger("paxos.bench.clusterSize", 3);
+
+	private ConsensusBenchmarks() {
+	}
+
+	/**
+	 * Returns the benchmarks of consensus.
+	 * @return The benchmarks.
+	 */
+	public static List<Microbenchmark> all() {
+		return Arrays.asList(
+				new ClusterBenchmark("consensus.propose") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) throws Exception {
+						int key = nextKey(thread);
+						blackhole.consume(leader.proposeBatch(BatchCodec.encode(Batch.of(key, key, 2))));
+					}
+				},
+				new ClusterBenchmark("consensus.put") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						int key = nextKey(thread);
+						blackhole.consume(leader.put(key, key));
+					}
+				});
+	}
+
+	/** A benchmark of a cluster whose Server1 leads. */
+	private abstract static class ClusterBenchmark extends Microbenchmark {
+
+		protected IKVStoreServer leader;
+		private SimulatedCluster cluster;
+		private int[] counters;
+
+		ClusterBenchmark(String name) {
+			super(name);
+		}
+
+		@Override
+		public void setUp(int threads) throws Exception {
+			cluster = new SimulatedCluster(CLUSTER_SIZE, 1);
+			leader = cluster.getServer(1);
+			// The first operation elects Server1, so that the iterations measure the steady state
+			leader.put(Integer.MIN_VALUE, 0);
+			counters = new int[threads * 16];
+		}
+
+		/**
+		 * Returns the next key of a thread; no two operations use the same key.
+		 */
+		protected int nextKey(int thread) {
+			return thread << 24 | counters[thread * 16]++;
+		}
+
+		@Override
+		public void tearDown() {
+			cluster.close();
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ * The Harness class runs microbenchmarks in the manner of JMH, which this project cannot depend on.
+ * Each benchmark runs a number of warm-up iterations, whose results are discarded so that the JIT compiler
+ * reaches a steady state, followed by measured iterations of a fixed duration during which every thread
+ * calls the operation in a loop.
+ * In throughput mode the operations completed per second are reported. In sample-time mode every call is
+ * timed, and the percentiles of a sample of those times are reported; the sample keeps every call at first
+ * and then every second, fourth, and so on, so that it covers the whole iteration in bounded memory.
+ * Both modes report the bytes allocated per operation by the benchmark threads and the collections
+ * that ran during the measured iterations.
+ * Configured with system properties: -Dpaxos.bench.warmup (3 iterations), -Dpaxos.bench.iterations (5),
+ * -Dpaxos.bench.iterationMillis (1000) and -Dpaxos.bench.modes (thrpt,sample).
+ */
+package Benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class Harness {
+
+	/** What a benchmark reports. */
+	public enum Mode { THROUGHPUT, SAMPLE_TIME }
+
+	private static final int WARMUP_ITERATIONS = Integer.getInteger("paxos.bench.warmup", 3);
+	private static final int ITERATIONS = Integer.getInteger("paxos.bench.iterations", 5);
+	private static final long ITERATION_MILLIS = Long.getLong("paxos.bench.iterationMillis", 1000);
+	private static final String MODES = System.getProperty("paxos.bench.modes", "thrpt,sample");
+
+	/** The number of call times each thread keeps per iteration in sample-time mode. */
+	private static final int SAMPLES_PER_THREAD = 1 << 16;
+
+	/** Counts the bytes allocated by a thread, where the JVM supports it. */
+	private static final com.sun.management.ThreadMXBean threadBean = allocationBean();
+
+	private final PrintStream report;
+
+	/**
+	 * Constructs a Harness object.
+	 * @param report The stream the results are printed to.
+	 */
+	public Harness(PrintStream report) {
+		this.report = report;
+	}
+
+	/**
+	 * Returns the modes selected with -Dpaxos.bench.modes.
+	 * @return The modes.
+	 */
+	public static List<Mode> selectedModes() {
+		List<Mode> modes = new ArrayList<>();
+		for (String mode : MODES.split(",")) {
+			switch (mode.trim()) {
+				case "thrpt": modes.add(Mode.THROUGHPUT); break;
+				case "sample": modes.add(Mode.SAMPLE_TIME); break;
+				default: throw new IllegalArgumentException("Unknown benchmark mode: " + mode);
+			}
+		}
+		return modes;
+	}
+
+	/**
+	 * Prints the header of the results.
+	 */
+	public void printHeader() {
+		report.printf("%-28s %-7s %7s  %s%n", "Benchmark", "Mode", "Threads", "Score");
+	}
+
+	/**
+	 * Runs a benchmark in every selected mode and prints one line of results per mode.
+	 * @param benchmark The benchmark.
+	 * @param threads The number of threads calling the operation at the same time.
+	 * @throws Exception If the state of the benchmark cannot be set up or an operation fails.
+	 */
+	public void run(Microbenchmark benchmark, int threads) throws Exception {
+		benchmark.setUp(threads);
+		try {
+			for (Mode mode : selectedModes()) {
+				for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+					iterate(benchmark, threads, mode);
+				}
+				long gcCountBefore = gcCount();
+				long gcMillisBefore = gcMillis();
+				List<Iteration> iterations = new ArrayList<>();
+				for (int i = 0; i < ITERATIONS; i++) {
+					iterations.add(iterate(benchmark, threads, mode));
+				}
+				String gc = String.format("gc=%d (%d ms)", gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+				report.printf("%-28s %-7s %7d  %s  %s  %s%n", benchmark.getName(), mode == Mode.THROUGHPUT ? "thrpt" : "sample",
+						threads, mode == Mode.THROUGHPUT ? throughput(iterations) : percentiles(iterations), allocation(iterations), gc);
+			}
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Runs one iteration: starts the threads together, lets them call the operation for the iteration time,
+	 * and stops them.
+	 */
+	private Iteration iterate(Microbenchmark benchmark, int threads, Mode mode) throws Exception {
+		Worker[] workers = new Worker[threads];
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(benchmark, i, mode, ready, start, failure);
+			workers[i].start();
+		}
+		ready.await();
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(ITERATION_MILLIS);
+		for (Worker worker : workers) {
+			worker.running = false;
+		}
+		for (Worker worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - begin;
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		Iteration iteration = new Iteration(elapsed);
+		for (Worker worker : workers) {
+			iteration.operations += worker.operations;
+			iteration.allocatedBytes += worker.allocatedBytes;
+			iteration.samples.add(Arrays.copyOf(worker.samples, worker.sampleCount));
+		}
+		return iteration;
+	}
+
+	private static String throughput(List<Iteration> iterations) {
+		double min = Double.MAX_VALUE;
+		double max = 0;
+		double sum = 0;
+		for (Iteration iteration : iterations) {
+			double opsPerSecond = iteration.operations * 1e9 / iteration.elapsedNanos;
+			min = Math.min(min, opsPerSecond);
+			max = Math.max(max, opsPerSecond);
+			sum += opsPerSecond;
+		}
+		return String.format("%14.1f ops/s (min %.1f, max %.1f)", sum / iterations.size(), min, max);
+	}
+
+	private static String percentiles(List<Iteration> iterations) {
+		int count = 0;
+		for (Iteration iteration : iterations) {
+			for (long[] samples : iteration.samples) {
+				count += samples.length;
+			}
+		}
+		long[] all = new long[count];
+		int offset = 0;
+		for (Iteration iteration : iterations) {
+			for (long[] samples : iteration.samples) {
+				System.arraycopy(samples, 0, all, offset, samples.length);
+				offset += samples.length;
+			}
+		}
+		Arrays.sort(all);
+		return String.format("p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f us/op",
+				micros(all, 0.50), micros(all, 0.90), micros(all, 0.99), micros(all, 0.999), micros(all, 1.0));
+	}
+
+	private static double micros(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) (quantile * sorted.length))] / 1e3;
+	}
+
+	private static String allocation(List<Iteration> iterations) {
+		if (threadBean == null) {
+			return "alloc=n/a";
+		}
+		long operations = 0;
+		long bytes = 0;
+		for (Iteration iteration : iterations) {
+			operations += iteration.operations;
+			bytes += iteration.allocatedBytes;
+		}
+		return String.format("alloc=%.1f B/op", operations == 0 ? 0.0 : bytes / (double) operations);
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, bean.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+		if (!allocationBean.isThreadAllocatedMemorySupported()) {
+			return null;
+		}
+		allocationBean.setThreadAllocatedMemoryEnabled(true);
+		return allocationBean;
+	}
+
+	/** The results of one iteration. */
+	private static final class Iteration {
+
+		private final long elapsedNanos;
+		private long operations;
+		private long allocatedBytes;
+		private final List<long[]> samples = new ArrayList<>();
+
+		Iteration(long elapsedNanos) {
+			this.elapsedNanos = elapsedNanos;
+		}
+	}
+
+	/** A thread calling the operation of a benchmark until the iteration ends. */
+	private static final class Worker extends Thread {
+
+		private final Microbenchmark benchmark;
+		private final int index;
+		private final Mode mode;
+		private final CountDownLatch ready;
+		private final CountDownLatch start;
+		private final AtomicReference<Exception> failure;
+		private final Blackhole blackhole = new Blackhole();
+		private volatile boolean running = true;
+		private long operations;
+		private long allocatedBytes;
+		private final long[] samples;
+		private int sampleCount;
+
+		Worker(Microbenchmark benchmark, int index, Mode mode, CountDownLatch ready, CountDownLatch start,
+				AtomicReference<Exception> failure) {
+			super("paxos-bench-" + index);
+			this.benchmark = benchmark;
+			this.index = index;
+			this.mode = mode;
+			this.ready = ready;
+			this.start = start;
+			this.failure = failure;
+			this.samples = new long[mode == Mode.SAMPLE_TIME ? SAMPLES_PER_THREAD : 0];
+		}
+
+		@Override
+		public void run() {
+			ready.countDown();
+			try {
+				start.await();
+			} catch (InterruptedException ie) {
+				return;
+			}
+			long allocatedBefore = allocatedBytes();
+			try {
+				if (mode == Mode.THROUGHPUT) {
+					while (running) {
+						benchmark.invoke(index, blackhole);
+						operations++;
+					}
+				} else {
+					sample();
+				}
+			} catch (Exception e) {
+				failure.compareAndSet(null, e);
+			}
+			allocatedBytes = allocatedBytes() - allocatedBefore;
+		}
+
+		/**
+		 * Times every call, keeping every call whose number is a multiple of the stride; the stride doubles,
+		 * and every other sample kept so far is dropped, whenever the samples are full.
+		 */
+		private void sample() throws Exception {
+			long stride = 1;
+			while (running) {
+				long begin = System.nanoTime();
+				benchmark.invoke(index, blackhole);
+				long time = System.nanoTime() - begin;
+				if (operations++ % stride != 0) {
+					continue;
+				}
+				if (sampleCount == samples.length) {
+					for (int i = 0; i < samples.length / 2; i++) {
+						samples[i] = samples[2 * i];
+					}
+					sampleCount = samples.length / 2;
+					stride *= 2;
+					if ((operations - 1) % stride != 0) {
+						continue;
+					}
+				}
+				samples[sampleCount++] = time;
+			}
+		}
+
+		private long allocatedBytes() {
+			return threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(getId());
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * The LoggerBenchmarks class measures the formatting done by the Logger, which the store runs for every
+ * applied operation and the client for every response.
+ */
+package Benchmark;
+
+import Compute.Response;
+import Server.Logger;
+
+import java.util.Arrays;
+import java.util.List;
+
+public final class LoggerBenchmarks {
+
+	private LoggerBenchmarks() {
+	}
+
+	/**
+	 * Returns the benchmarks of the logger.
+	 * @return The benchmarks.
+	 */
+	public static List<Microbenchmark> all() {
+		Logger logger = new Logger();
+		long[] responses = {
+				Response.of(Response.STORED, 42), Response.of(Response.EXISTS, 42), Response.of(Response.FOUND, 42),
+				Response.of(Response.NOT_FOUND, 0), Response.of(Response.REMOVED, 42), Response.of(Response.NO_CONSENSUS, 2)
+		};
+		return Arrays.asList(
+				new Microbenchmark("logger.formatResponse") {
+					private int[] counters;
+
+					@Override
+					public void setUp(int threads) {
+						// Padded, so that the counters of different threads do not share a cache line
+						counters = new int[threads * 16];
+					}
+
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						int count = counters[thread * 16]++;
+						blackhole.consume(logger.formatResponse(count, responses[count % responses.length]));
+					}
+				},
+				new Microbenchmark("logger.timestamp") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						blackhole.consume(logger.getCurrentTimeStamp());
+					}
+				});
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * The Microbenchmark class represents one operation measured by the Harness, with the state it needs.
+ * The state is set up once before the warm-up and torn down after the last iteration; the operation
+ * itself is called in a loop by every benchmark thread at the same time.
+ */
+package Benchmark;
+
+public abstract class Microbenchmark {
+
+	private final String name;
+
+	/**
+	 * Constructs a Microbenchmark object.
+	 * @param name The name of the benchmark, such as "store.putKey".
+	 */
+	protected Microbenchmark(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Prepares the state shared by the benchmark threads.
+	 * @param threads The number of threads that will call the operation.
+	 * @throws Exception If the state cannot be prepared.
+	 */
+	public void setUp(int threads) throws Exception {
+	}
+
+	/**
+	 * Performs the measured operation once.
+	 * @param thread The index of the calling thread, from 0.
+	 * @param blackhole The sink of the results of the operation.
+	 * @throws Exception If the operation fails, which ends the benchmark.
+	 */
+	public abstract void invoke(int thread, Blackhole blackhole) throws Exception;
+
+	/**
+	 * Releases the state shared by the benchmark threads.
+	 * @throws Exception If the state cannot be released.
+	 */
+	public void tearDown() throws Exception {
+	}
+}
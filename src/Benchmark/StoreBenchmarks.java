@@ -0,0 +1,99 @@
+/**
+ * The StoreBenchmarks class measures the operations of the KVStore, which every replica applies each
+ * decided operation with. Run with several threads, the threads contend for the locks of the segments.
+ * The store engine follows -Dpaxos.store.engine as it does in a server.
+ */
+package Benchmark;
+
+import Server.KVStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public final class StoreBenchmarks {
+
+	/** The number of keys the operations spread over; a power of two. */
+	private static final int KEYS = 1 << 16;
+
+	private StoreBenchmarks() {
+	}
+
+	/**
+	 * Returns the benchmarks of the store.
+	 * @return The benchmarks.
+	 */
+	public static List<Microbenchmark> all() {
+		return Arrays.asList(
+				new StoreBenchmark("store.putKey") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						// Stores each key once, then takes the write lock to find it present
+						blackhole.consume(store.putKey(nextKey(thread), thread));
+					}
+				},
+				new StoreBenchmark("store.putDeleteKey") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						int key = nextKey(thread);
+						blackhole.consume(store.putKey(key, thread));
+						blackhole.consume(store.deleteKey(key));
+					}
+				},
+				new StoreBenchmark("store.getKey") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						blackhole.consume(store.getKey(nextKey(thread)));
+					}
+				},
+				new StoreBenchmark("store.checkReq") {
+					@Override
+					public void invoke(int thread, Blackhole blackhole) {
+						blackhole.consume(store.checkReq(nextKey(thread), 2));
+					}
+				});
+	}
+
+	/** A benchmark of a store holding every other key of the key space. */
+	private abstract static class StoreBenchmark extends Microbenchmark {
+
+		protected KVStore store;
+		private Path directory;
+		private int[] counters;
+
+		StoreBenchmark(String name) {
+			super(name);
+		}
+
+		@Override
+		public void setUp(int threads) throws IOException {
+			directory = Files.createTempDirectory("paxos-bench");
+			store = new KVStore(directory);
+			for (int key = 0; key < KEYS; key += 2) {
+				store.putKey(key, key);
+			}
+			// Padded, so that the counters of different threads do not share a cache line
+			counters = new int[threads * 16];
+		}
+
+		/**
+		 * Returns the next key of a thread. The threads walk the key space from different offsets.
+		 */
+		protected int nextKey(int thread) {
+			int count = counters[thread * 16]++;
+			return (thread * (KEYS / 16) + count) & (KEYS - 1);
+		}
+
+		@Override
+		public void tearDown() throws IOException {
+			store = null;
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * The AsyncClient class is a non-blocking client of the key-value store for applications that issue many
+ * concurrent requests. Every operation returns a CompletableFuture as soon as its request is sent, and all
+ * requests are pipelined over one NIO connection to the server, whose replies are matched to their requests
+ * by identifier whatever order they come back in, so that any number of requests can be in flight without a
+ * thread waiting for each of them.
+ * Several operations can also be submitted together as a Batch, which the cluster applies atomically in one
+ * slot of the log and answers with one reply.
+ * The futures are completed on the thread serving the connection: actions chained to them that block must
+ * be given an executor, such as with thenApplyAsync.
+ */
+package Client;
+
+import Compute.Batch;
+import Compute.BatchCodec;
+import Compute.NioStub;
+import Server.ServerStoreUtil;
+
+import java.rmi.ConnectException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+public class AsyncClient implements AutoCloseable {
+
+	private final NioStub stub;
+
+	private AsyncClient(NioStub stub) {
+		this.stub = stub;
+	}
+
+	/**
+	 * Connects to a server over the NIO transport, whichever transport -Dpaxos.transport selects for this
+	 * process. The server must serve the NIO transport, that is be started with -Dpaxos.transport=nio.
+	 * @param serverName The name of the server, such as "Server1".
+	 * @param host The host of the server.
+	 * @return The client.
+	 * @throws ConnectException If the server cannot be reached.
+	 */
+	public static AsyncClient connect(String serverName, String host) throws ConnectException {
+		return new AsyncClient(NioStub.connect(host, ServerStoreUtil.getNioPortNumber(serverName)));
+	}
+
+	/**
+	 * Retrieves the value associated with the specified key.
+	 * @param key The key to retrieve the value for.
+	 * @return The future response, FOUND with the value or NOT_FOUND, see {@link Compute.Response}.
+	 */
+	public CompletableFuture<Long> get(int key) {
+		return stub.getAsync(key);
+	}
+
+	/**
+	 * Associates the specified value with the specified key.
+	 * @param key The key to associate the value with.
+	 * @param value The value to be associated with the key.
+	 * @return The future response, STORED or EXISTS with the value, see {@link Compute.Response}.
+	 */
+	public CompletableFuture<Long> put(int key, int value) {
+		return stub.putAsync(key, value);
+	}
+
+	/**
+	 * Deletes the key-value pair associated with the specified key.
+	 * @param key The key of the pair to be deleted.
+	 * @return The future response, REMOVED with the value or NOT_FOUND, see {@link Compute.Response}.
+	 */
+	public CompletableFuture<Long> delete(int key) {
+		return stub.deleteAsync(key);
+	}
+
+	/**
+	 * Submits several operations, on any keys, to be applied atomically and in order.
+	 * @param batch The operations, whose actions are 1 for get, 2 for put and 3 for delete.
+	 * @return The future response of each operation, in the order of the batch, see {@link Compute.Response}.
+	 * @throws IllegalArgumentException If the batch is empty.
+	 */
+	public CompletableFuture<long[]> submit(Batch batch) {
+		if (batch.size() == 0) {
+			throw new IllegalArgumentException("A batch must hold at least one operation.");
+		}
+		return stub.submitBatchAsync(BatchCodec.encode(batch));
+	}
+
+	/**
+	 * Retrieves the values of several keys together, as they were at one point of the log.
+	 * @param keys The keys to retrieve the values for.
+	 * @return The future response for each key, in order, see {@link Compute.Response}.
+	 */
+	public CompletableFuture<long[]> getAll(int... keys) {
+		int[] gets = new int[keys.length];
+		Arrays.fill(gets, 1);
+		return submit(new Batch(keys.clone(), new int[keys.length], gets));
+	}
+
+	/**
+	 * Closes the connection, failing the requests still waiting for their reply.
+	 */
+	@Override
+	public void close() {
+		stub.close();
+	}
+}
@@ -1,10 +1,12 @@
 /**
- * The Client class represents a client application that interacts with a remote server through RMI.
+ * The Client class represents a client application that interacts with a remote server through RMI,
+ * or through the NIO transport when started with -Dpaxos.transport=nio.
  * It provides functionalities to perform operations like PUT, GET, and DEL on a key-value store service.
  */
 package Client;
 
 import Compute.IKVStore;
+import Compute.Result;
 import Server.Constants;
 import Server.Logger;
 import Server.ServerStoreUtil;
@@ -14,8 +16,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Scanner;
@@ -25,19 +25,35 @@ public class Client {
 
 	private static final String QUIT_COMMAND = "quit";
 	private static final Set<String> VALID_OPERATIONS = new HashSet<>(Arrays.asList("PUT", "GET", "DEL"));
+	private static final String STALE_READ_OPTION = "--stale";
+	private static final String LOAD_OPTION = "--load";
+
+	/** The maximum staleness, in milliseconds, accepted for reads from the local replica, or -1 to read through consensus. */
+	private static long maxStalenessMillis = -1;
+
+	/** The highest log index this client has written or read, which later stale reads must reflect. */
+	private static int sessionIndex;
 
 	/**
 	 * Main method to start the client application.
-	 * @param args Command-line arguments specifying the server to connect to.
+	 * @param args Command-line arguments specifying the server to connect to, optionally followed by
+	 * "--stale &lt;millis&gt;" to read from the server's local replica with at most that staleness,
+	 * or by "--load" to run the LoadGenerator against the server instead of reading operations.
 	 */
 	public static void main(String args[]) {
 		Logger logger = new Logger();
 		System.out.println("Client has started ....");
 
 		try {
+			if (args.length == 3 && args[1].equals(STALE_READ_OPTION)) {
+				maxStalenessMillis = Long.parseLong(args[2]);
+			}
 			if (SERVERS.contains(args[0])) {
-				Registry registry = LocateRegistry.getRegistry("localhost", ServerStoreUtil.getPortNumber(args[0]));
-				IKVStore stub = (IKVStore) registry.lookup(args[0]);
+				IKVStore stub = ServerStoreUtil.lookup(args[0], "localhost");
+				if (args.length == 2 && args[1].equals(LOAD_OPTION)) {
+					new LoadGenerator(stub, args[0]).run(System.out);
+					System.exit(0);
+				}
 				populateKV(stub);
 				performOperation(stub);
 			} else {
@@ -47,6 +63,8 @@ public class Client {
 		} catch (RemoteException | NotBoundException e) {
 			logger.connectionException();
 			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -152,15 +170,17 @@ public class Client {
 					return; // Exit the method if value format is invalid
 				}
 				logger.ackRequestSent(String.format("Put operation (Key, Value) -> (%d, %d)", key, value));
-				System.out.println(stub.put(key, value));
+				System.out.println(logger.formatResponse(key, stub.put(key, value)));
+				recordWrite(stub);
 				break;
 			case "GET":
 				logger.ackRequestSent(String.format("Get operation (Key) -> (%d)", key));
-				System.out.println(stub.get(key));
+				System.out.println(maxStalenessMillis < 0 ? logger.formatResponse(key, stub.get(key)) : staleGet(stub, logger, key));
 				break;
 			case "DEL":
 				logger.ackRequestSent(String.format("Delete operation (Key) -> (%d)", key));
-				System.out.println(stub.delete(key));
+				System.out.println(logger.formatResponse(key, stub.delete(key)));
+				recordWrite(stub);
 				break;
 			default:
 				logger.ackRequestSent("Invalid Operation");
@@ -168,6 +188,32 @@ public class Client {
 		}
 	}
 
+	/**
+	 * Reads from the local replica of the server, asking it to reflect at least this client's last write or read.
+	 * @param stub The remote service stub to read from.
+	 * @param logger The logger formatting the response.
+	 * @param key The key to read.
+	 * @return The response, as text, with the log index it reflects and the staleness of the replica.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	private static String staleGet(IKVStore stub, Logger logger, int key) throws RemoteException {
+		Result result = stub.staleGet(key, sessionIndex, maxStalenessMillis);
+		sessionIndex = Math.max(sessionIndex, result.getAppliedIndex());
+		String staleness = result.getStalenessMillis() == Long.MAX_VALUE ? "unknown" : result.getStalenessMillis() + " ms";
+		return logger.formatResponse(key, result.getResponse()) + " (log index " + result.getAppliedIndex() + ", staleness " + staleness + ")";
+	}
+
+	/**
+	 * Remembers the log index covering the last write, so that later stale reads observe it.
+	 * @param stub The remote service stub the write was sent to.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	private static void recordWrite(IKVStore stub) throws RemoteException {
+		if (maxStalenessMillis >= 0) {
+			sessionIndex = Math.max(sessionIndex, stub.appliedIndex());
+		}
+	}
+
 	private static final Set<String> SERVERS = new HashSet<>(Arrays.asList(
 			Constants.SERVER1, Constants.SERVER2, Constants.SERVER3, Constants.SERVER4, Constants.SERVER5
 	));
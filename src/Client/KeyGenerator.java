@@ -0,0 +1,87 @@
+/**
+ * The KeyGenerator class draws the keys of a load from a key space, either uniformly or following a
+ * Zipfian distribution, where the probability of the key of rank i is proportional to 1 / i^theta and the
+ * lowest keys are the hottest. The Zipfian keys are drawn in constant time with the method of Gray et al.,
+ * "Quickly Generating Billion-Record Synthetic Databases", as YCSB does.
+ * A generator is immutable and shared by threads, each of which passes its own random source.
+ */
+package Client;
+
+import java.util.SplittableRandom;
+
+public class KeyGenerator {
+
+	private final int keyCount;
+	private final boolean zipfian;
+	private final double theta;
+	private final double alpha;
+	private final double zetaN;
+	private final double eta;
+
+	private KeyGenerator(int keyCount, boolean zipfian, double theta) {
+		this.keyCount = keyCount;
+		this.zipfian = zipfian;
+		this.theta = theta;
+		if (!zipfian) {
+			this.alpha = 0;
+			this.zetaN = 0;
+			this.eta = 0;
+			return;
+		}
+		double zeta2 = zeta(2, theta);
+		this.alpha = 1 / (1 - theta);
+		this.zetaN = zeta(keyCount, theta);
+		this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta2 / zetaN);
+	}
+
+	/**
+	 * Creates a generator drawing every key with the same probability.
+	 * @param keyCount The number of keys, drawn from 0 to keyCount - 1.
+	 * @return The generator.
+	 */
+	public static KeyGenerator uniform(int keyCount) {
+		return new KeyGenerator(keyCount, false, 0);
+	}
+
+	/**
+	 * Creates a generator drawing keys following a Zipfian distribution.
+	 * @param keyCount The number of keys, drawn from 0 to keyCount - 1, at least 2.
+	 * @param theta The skew of the distribution, between 0 and 1 exclusive; YCSB uses 0.99.
+	 * @return The generator.
+	 * @throws IllegalArgumentException If the skew or the number of keys is out of range.
+	 */
+	public static KeyGenerator zipfian(int keyCount, double theta) {
+		if (theta <= 0 || theta >= 1 || keyCount < 2) {
+			throw new IllegalArgumentException("A Zipfian distribution needs 0 < theta < 1 and at least 2 keys.");
+		}
+		return new KeyGenerator(keyCount, true, theta);
+	}
+
+	/**
+	 * Draws a key.
+	 * @param random The random source of the calling thread.
+	 * @return The key.
+	 */
+	public int nextKey(SplittableRandom random) {
+		if (!zipfian) {
+			return random.nextInt(keyCount);
+		}
+		double u = random.nextDouble();
+		double uz = u * zetaN;
+		if (uz < 1) {
+			return 0;
+		}
+		if (uz < 1 + Math.pow(0.5, theta)) {
+			return 1;
+		}
+		return (int) Math.min(keyCount - 1, (long) (keyCount * Math.pow(eta * u - eta + 1, alpha)));
+	}
+
+	private static double zeta(long n, double theta) {
+		double sum = 0;
+		for (long i = 1; i <= n; i++) {
+			sum += 1 / Math.pow(i, theta);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * The LatencyHistogram class counts recorded latencies in buckets of bounded relative error, in the manner
+ * of HdrHistogram: values are grouped by their highest bit, and each group is split into 2048 linear
+ * sub-buckets, so that any value up to an hour in microseconds is kept to three significant digits in a
+ * fixed array, whatever the number of values recorded.
+ * A histogram is not thread-safe; each thread records into its own and the histograms are added up.
+ */
+package Client;
+
+public class LatencyHistogram {
+
+	/** The number of bits of a value kept exactly: 2048 sub-buckets, three significant digits. */
+	private static final int SUB_BUCKET_BITS = 11;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+	/** The highest value tracked; higher values are counted as this one. */
+	private static final long HIGHEST_TRACKABLE = 3_600_000_000L;
+
+	private final long[] counts;
+	private long totalCount;
+	private long max;
+	private double sum;
+
+	/**
+	 * Constructs an empty LatencyHistogram object.
+	 */
+	public LatencyHistogram() {
+		int buckets = 1;
+		while (((long) SUB_BUCKET_COUNT << (buckets - 1)) <= HIGHEST_TRACKABLE) {
+			buckets++;
+		}
+		counts = new long[(buckets + 1) * SUB_BUCKET_HALF_COUNT];
+	}
+
+	/**
+	 * Records a value.
+	 * @param value The value, such as a latency in microseconds; negative values count as 0.
+	 */
+	public void record(long value) {
+		long clamped = Math.min(Math.max(value, 0), HIGHEST_TRACKABLE);
+		counts[indexOf(clamped)]++;
+		totalCount++;
+		max = Math.max(max, clamped);
+		sum += clamped;
+	}
+
+	/**
+	 * Adds the values of another histogram to this one.
+	 * @param other The other histogram.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		max = Math.max(max, other.max);
+		sum += other.sum;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0 : sum / totalCount;
+	}
+
+	/**
+	 * Returns the value below which a percentage of the recorded values fall.
+	 * @param percentile The percentage, from 0 to 100.
+	 * @return The highest value of the bucket holding the percentile, or 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int indexOf(long value) {
+		int bucket = 64 - Long.numberOfLeadingZeros(value | (SUB_BUCKET_COUNT - 1)) - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> bucket);
+		return ((bucket + 1) << (SUB_BUCKET_BITS - 1)) + subBucket - SUB_BUCKET_HALF_COUNT;
+	}
+
+	private static long highestValueOf(int index) {
+		int bucket = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+		int subBucket = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+		if (bucket < 0) {
+			subBucket -= SUB_BUCKET_HALF_COUNT;
+			bucket = 0;
+		}
+		long lowest = (long) subBucket << bucket;
+		return lowest + (1L << bucket) - 1;
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ * The LoadGenerator class drives a server with a configurable load and reports the latency it observed.
+ * Each thread repeatedly picks an operation from the mix and a key from the key distribution and sends it.
+ * Without a target rate the load is a closed loop: each thread sends its next operation as soon as the
+ * previous one is answered. With a target rate the load is an open loop: each thread has a schedule of
+ * start times, and the latency of an operation is measured from the time it was scheduled to start rather
+ * than from the time it was sent, so that operations delayed behind a slow one count the wait too,
+ * which corrects the coordinated omission a closed loop suffers from. The time from sending to the reply
+ * is reported as well, as the service time.
+ * Latencies are recorded in LatencyHistograms, one per thread and operation, after a warm-up.
+ * Configured with system properties: -Dpaxos.load.threads (16), -Dpaxos.load.rate (0 for a closed loop,
+ * or operations per second), -Dpaxos.load.seconds (30), -Dpaxos.load.warmupSeconds (5),
+ * -Dpaxos.load.mix (50:40:10 of get:put:del), -Dpaxos.load.keys (100000),
+ * -Dpaxos.load.distribution (uniform or zipfian), -Dpaxos.load.theta (0.99) and -Dpaxos.load.seed (1).
+ */
+package Client;
+
+import Compute.IKVStore;
+import Compute.Response;
+
+import java.io.PrintStream;
+import java.rmi.RemoteException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadGenerator {
+
+	private static final int THREADS = Integer.getInteger("paxos.load.threads", 16);
+	private static final long RATE = Long.getLong("paxos.load.rate", 0);
+	private static final long SECONDS = Long.getLong("paxos.load.seconds", 30);
+	private static final long WARMUP_SECONDS = Long.getLong("paxos.load.warmupSeconds", 5);
+	private static final String MIX = System.getProperty("paxos.load.mix", "50:40:10");
+	private static final int KEYS = Integer.getInteger("paxos.load.keys", 100000);
+	private static final String DISTRIBUTION = System.getProperty("paxos.load.distribution", "uniform");
+	private static final double THETA = Double.parseDouble(System.getProperty("paxos.load.theta", "0.99"));
+	private static final long SEED = Long.getLong("paxos.load.seed", 1);
+
+	private static final int GET = 0;
+	private static final int PUT = 1;
+	private static final int DEL = 2;
+	private static final String[] OPERATION_NAMES = {"get", "put", "del"};
+
+	private final IKVStore stub;
+	private final String serverName;
+	private final KeyGenerator keys;
+
+	/** The cumulative weight of get, put and delete in the mix. */
+	private final int[] mix = new int[3];
+
+	/** The number of operations answered so far, warm-up included, for the progress report. */
+	private final LongAdder completed = new LongAdder();
+
+	/**
+	 * Constructs a LoadGenerator object.
+	 * @param stub The stub of the server to load.
+	 * @param serverName The name of the server, for the report.
+	 * @throws IllegalArgumentException If the mix or the key distribution is invalid.
+	 */
+	public LoadGenerator(IKVStore stub, String serverName) {
+		this.stub = stub;
+		this.serverName = serverName;
+		String[] weights = MIX.split(":");
+		if (weights.length != 3) {
+			throw new IllegalArgumentException("The mix must be get:put:del weights, such as 50:40:10.");
+		}
+		int total = 0;
+		for (int i = 0; i < 3; i++) {
+			total += Integer.parseInt(weights[i].trim());
+			mix[i] = total;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("The mix must have a positive weight.");
+		}
+		switch (DISTRIBUTION) {
+			case "uniform": keys = KeyGenerator.uniform(KEYS); break;
+			case "zipfian": keys = KeyGenerator.zipfian(KEYS, THETA); break;
+			default: throw new IllegalArgumentException("Unknown key distribution: " + DISTRIBUTION);
+		}
+	}
+
+	/**
+	 * Runs the load for the warm-up and the measured time, printing the progress every second and the
+	 * latencies at the end.
+	 * @param out The stream the report is printed to.
+	 * @throws InterruptedException If interrupted while the load runs.
+	 */
+	public void run(PrintStream out) throws InterruptedException {
+		out.printf("Load on %s: %d threads, %s, mix get:put:del %s, %d %s keys%s, %d s after %d s of warm-up%n",
+				serverName, THREADS, RATE > 0 ? "open loop at " + RATE + " ops/s" : "closed loop", MIX, KEYS,
+				DISTRIBUTION, DISTRIBUTION.equals("zipfian") ? " (theta " + THETA + ")" : "", SECONDS, WARMUP_SECONDS);
+		long start = System.nanoTime();
+		long measureFrom = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+		long end = measureFrom + TimeUnit.SECONDS.toNanos(SECONDS);
+		Worker[] workers = new Worker[THREADS];
+		for (int i = 0; i < THREADS; i++) {
+			workers[i] = new Worker(i, start, measureFrom, end);
+			workers[i].start();
+		}
+
+		long lastCount = 0;
+		for (int second = 1; System.nanoTime() < end; second++) {
+			long next = start + TimeUnit.SECONDS.toNanos(second);
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			long count = completed.sum();
+			out.printf("[%3d s] %8d ops/s%s%n", second, count - lastCount, next <= measureFrom ? " (warm-up)" : "");
+			lastCount = count;
+		}
+		for (Worker worker : workers) {
+			worker.join();
+		}
+		// Operations behind their schedule in an open loop are still sent after the end
+		report(out, workers, (System.nanoTime() - measureFrom) / 1e9);
+	}
+
+	private void report(PrintStream out, Worker[] workers, double measuredSeconds) {
+		LatencyHistogram[] responseTimes = new LatencyHistogram[4];
+		LatencyHistogram[] serviceTimes = new LatencyHistogram[4];
+		long[] errors = new long[4];
+		for (int op = 0; op < 4; op++) {
+			responseTimes[op] = new LatencyHistogram();
+			serviceTimes[op] = new LatencyHistogram();
+		}
+		for (Worker worker : workers) {
+			for (int op = 0; op < 3; op++) {
+				responseTimes[op].add(worker.responseTimes[op]);
+				responseTimes[3].add(worker.responseTimes[op]);
+				serviceTimes[op].add(worker.serviceTimes[op]);
+				serviceTimes[3].add(worker.serviceTimes[op]);
+				errors[op] += worker.errors[op];
+				errors[3] += worker.errors[op];
+			}
+		}
+		if (RATE > 0) {
+			out.println("Response time, from the scheduled start (corrected for coordinated omission):");
+			printTable(out, responseTimes, errors, measuredSeconds);
+			out.println("Service time, from sending to the reply:");
+		} else {
+			out.println("Latency:");
+		}
+		printTable(out, serviceTimes, errors, measuredSeconds);
+	}
+
+	private void printTable(PrintStream out, LatencyHistogram[] histograms, long[] errors, double measuredSeconds) {
+		out.printf("%-4s %10s %8s %10s %9s %9s %9s %9s %9s %9s  (ms)%n",
+				"op", "count", "errors", "ops/s", "mean", "p50", "p90", "p99", "p99.9", "max");
+		for (int op = 0; op < 4; op++) {
+			LatencyHistogram histogram = histograms[op];
+			if (op < 3 && histogram.getTotalCount() == 0) {
+				continue;
+			}
+			out.printf("%-4s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+					op < 3 ? OPERATION_NAMES[op] : "all", histogram.getTotalCount(), errors[op],
+					histogram.getTotalCount() / measuredSeconds, histogram.getMean() / 1e3,
+					histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(90) / 1e3,
+					histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+					histogram.getMax() / 1e3);
+		}
+	}
+
+	/** A thread sending operations until the end of the load. */
+	private final class Worker extends Thread {
+
+		private final SplittableRandom random;
+		private final long measureFrom;
+		private final long end;
+
+		/** The interval between two scheduled starts in an open loop, in nanoseconds. */
+		private final long interval;
+
+		/** The first scheduled start; the threads are spread over one interval. */
+		private final long firstStart;
+
+		private final LatencyHistogram[] responseTimes = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+		private final LatencyHistogram[] serviceTimes = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+		private final long[] errors = new long[3];
+
+		Worker(int index, long start, long measureFrom, long end) {
+			super("paxos-load-" + index);
+			setDaemon(true);
+			this.random = new SplittableRandom(SEED * 1_000_003 + index);
+			this.measureFrom = measureFrom;
+			this.end = end;
+			this.interval = RATE > 0 ? TimeUnit.SECONDS.toNanos(THREADS) / RATE : 0;
+			this.firstStart = start + interval * index / THREADS;
+		}
+
+		@Override
+		public void run() {
+			long scheduled = firstStart;
+			while (true) {
+				long now = System.nanoTime();
+				if (interval > 0) {
+					if (scheduled >= end) {
+						return;
+					}
+					// An operation behind its schedule is sent at once
+					while (now < scheduled) {
+						LockSupport.parkNanos(scheduled - now);
+						now = System.nanoTime();
+					}
+				} else {
+					if (now >= end) {
+						return;
+					}
+					scheduled = now;
+				}
+				int op = nextOperation();
+				int key = keys.nextKey(random);
+				long sent = System.nanoTime();
+				boolean failed = !send(op, key);
+				long answered = System.nanoTime();
+				completed.increment();
+				if (scheduled >= measureFrom) {
+					responseTimes[op].record(TimeUnit.NANOSECONDS.toMicros(answered - scheduled));
+					serviceTimes[op].record(TimeUnit.NANOSECONDS.toMicros(answered - sent));
+					if (failed) {
+						errors[op]++;
+					}
+				}
+				scheduled += interval;
+			}
+		}
+
+		private int nextOperation() {
+			int draw = random.nextInt(mix[DEL]);
+			return draw < mix[GET] ? GET : draw < mix[PUT] ? PUT : DEL;
+		}
+
+		/**
+		 * Sends an operation.
+		 * @return True if the operation was answered, false if it reached no consensus or failed.
+		 */
+		private boolean send(int op, int key) {
+			try {
+				long response;
+				switch (op) {
+					case GET: response = stub.get(key); break;
+					case PUT: response = stub.put(key, random.nextInt()); break;
+					default: response = stub.delete(key); break;
+				}
+				return Response.statusOf(response) != Response.NO_CONSENSUS;
+			} catch (RemoteException | RuntimeException e) {
+				// An unchecked failure of the stub, such as a malformed reply, counts as an error too
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * The Batch class represents the operations proposed together as the value of one slot of the log.
+ * The operations are applied atomically and in order, and each one gets its own response.
+ * An empty batch fills a hole in the log and changes nothing.
+ * The proposer of a batch gives it an identifier unique across the cluster, so that it can tell its own
+ * batch from an identical one proposed by another server; a batch not proposed yet has the identifier 0.
+ */
+package Compute;
+
+import java.util.Arrays;
+
+public class Batch {
+
+	/** The batch that fills a hole in the log. */
+	public static final Batch EMPTY = new Batch(new int[0], new int[0], new int[0]);
+
+	private final long id;
+	private final int[] keys;
+	private final int[] values;
+	private final int[] actions;
+
+	/**
+	 * Constructs a Batch object without an identifier. The arrays must have the same length.
+	 * @param keys The key of each operation.
+	 * @param values The value of each operation.
+	 * @param actions The action of each operation (e.g., PUT, GET, DEL).
+	 */
+	public Batch(int[] keys, int[] values, int[] actions) {
+		this(0, keys, values, actions);
+	}
+
+	/**
+	 * Constructs a Batch object. The arrays must have the same length.
+	 * @param id The identifier of the batch, or 0 if it has none yet.
+	 * @param keys The key of each operation.
+	 * @param values The value of each operation.
+	 * @param actions The action of each operation (e.g., PUT, GET, DEL).
+	 */
+	public Batch(long id, int[] keys, int[] values, int[] actions) {
+		this.id = id;
+		this.keys = keys;
+		this.values = values;
+		this.actions = actions;
+	}
+
+	/**
+	 * Returns the same operations under another identifier.
+	 * @param id The identifier.
+	 * @return The batch.
+	 */
+	public Batch withId(long id) {
+		return new Batch(id, keys, values, actions);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Creates a batch holding a single operation.
+	 * @param key The key involved in the operation.
+	 * @param value The value associated with the key.
+	 * @param action The action to be performed (e.g., PUT, GET, DEL).
+	 * @return The batch.
+	 */
+	public static Batch of(int key, int value, int action) {
+		return new Batch(new int[] {key}, new int[] {value}, new int[] {action});
+	}
+
+	/**
+	 * Returns the number of operations in the batch.
+	 * @return The number of operations.
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	public int getKey(int index) {
+		return keys[index];
+	}
+
+	public int getValue(int index) {
+		return values[index];
+	}
+
+	public int getAction(int index) {
+		return actions[index];
+	}
+
+	/**
+	 * Checks whether another batch has the same identifier and holds the same operations in the same order.
+	 * @param other The object to compare with.
+	 * @return True if the other object is an equal batch, false otherwise.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof Batch)) {
+			return false;
+		}
+		Batch batch = (Batch) other;
+		return id == batch.id && Arrays.equals(keys, batch.keys) && Arrays.equals(values, batch.values) && Arrays.equals(actions, batch.actions);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * (31 * Long.hashCode(id) + Arrays.hashCode(keys)) + Arrays.hashCode(values)) + Arrays.hashCode(actions);
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * The BatchCodec class encodes batches and promises into compact binary frames for the batch RPCs of IKVStore.
+ * All numbers are big-endian ints, except the identifier of a batch, a long. A batch is framed as its
+ * identifier and its size followed by one (key, value, action) tuple per operation, so a batch of
+ * n operations takes 12 + 12n bytes instead of a serialized object graph.
+ * A promise is framed as a granted flag byte, the promised proposal identifier, the number of entries,
+ * and then the slot, proposal identifier and batch of each entry. A log chunk is framed the same way,
+ * with the last applied slot of the sender in place of the flag and the promised proposal identifier.
+ * Sizes and counts read from a frame are checked against the bytes left in it before anything is allocated,
+ * so that a corrupt or hostile frame is rejected with an IllegalArgumentException.
+ */
+package Compute;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BatchCodec {
+
+	/** The number of bytes of one encoded (key, value, action) tuple. */
+	private static final int TUPLE_BYTES = 3 * Integer.BYTES;
+
+	/** The number of bytes of an encoded empty batch: its identifier and its size. */
+	private static final int EMPTY_BATCH_BYTES = Long.BYTES + Integer.BYTES;
+
+	/** The smallest number of bytes of one encoded log entry: its slot, proposal identifier and an empty batch. */
+	private static final int MIN_ENTRY_BYTES = 2 * Integer.BYTES + EMPTY_BATCH_BYTES;
+
+	private BatchCodec() {
+	}
+
+	/**
+	 * Encodes a batch into a frame.
+	 * @param batch The batch to encode.
+	 * @return The encoded frame.
+	 */
+	public static byte[] encode(Batch batch) {
+		ByteBuffer buffer = ByteBuffer.allocate(encodedSize(batch));
+		writeBatch(buffer, batch);
+		return buffer.array();
+	}
+
+	/**
+	 * Decodes a batch from a frame.
+	 * @param frame The encoded frame.
+	 * @return The decoded batch.
+	 * @throws IllegalArgumentException If the size of the batch does not match the frame.
+	 */
+	public static Batch decodeBatch(byte[] frame) {
+		return readBatch(ByteBuffer.wrap(frame), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Decodes a batch from a frame, rejecting it before allocating anything if it holds too many operations.
+	 * @param frame The encoded frame.
+	 * @param maxSize The maximum number of operations accepted.
+	 * @return The decoded batch.
+	 * @throws IllegalArgumentException If the size of the batch does not match the frame or exceeds the maximum.
+	 */
+	public static Batch decodeBatch(byte[] frame, int maxSize) {
+		return readBatch(ByteBuffer.wrap(frame), maxSize);
+	}
+
+	/**
+	 * Encodes a promise into a frame.
+	 * @param promise The promise to encode.
+	 * @return The encoded frame.
+	 */
+	public static byte[] encode(Promise promise) {
+		int size = 1 + 2 * Integer.BYTES + entriesSize(promise.getAcceptedEntries());
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put((byte) (promise.isGranted() ? 1 : 0));
+		buffer.putInt(promise.getPromisedProposalId());
+		writeEntries(buffer, promise.getAcceptedEntries());
+		return buffer.array();
+	}
+
+	/**
+	 * Decodes a promise from a frame.
+	 * @param frame The encoded frame.
+	 * @return The decoded promise.
+	 */
+	public static Promise decodePromise(byte[] frame) {
+		ByteBuffer buffer = ByteBuffer.wrap(frame);
+		boolean granted = buffer.get() == 1;
+		int promisedProposalId = buffer.getInt();
+		return new Promise(granted, promisedProposalId, readEntries(buffer));
+	}
+
+	/**
+	 * Encodes a log chunk into a frame.
+	 * @param chunk The log chunk to encode.
+	 * @return The encoded frame.
+	 */
+	public static byte[] encode(LogChunk chunk) {
+		int size = 2 * Integer.BYTES + entriesSize(chunk.getEntries());
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(chunk.getLastApplied());
+		writeEntries(buffer, chunk.getEntries());
+		return buffer.array();
+	}
+
+	/**
+	 * Decodes a log chunk from a frame.
+	 * @param frame The encoded frame.
+	 * @return The decoded log chunk.
+	 */
+	public static LogChunk decodeLogChunk(byte[] frame) {
+		ByteBuffer buffer = ByteBuffer.wrap(frame);
+		int lastApplied = buffer.getInt();
+		return new LogChunk(lastApplied, readEntries(buffer));
+	}
+
+	private static int entriesSize(List<LogEntry> entries) {
+		int size = 0;
+		for (LogEntry entry : entries) {
+			size += 2 * Integer.BYTES + encodedSize(entry.getBatch());
+		}
+		return size;
+	}
+
+	private static void writeEntries(ByteBuffer buffer, List<LogEntry> entries) {
+		buffer.putInt(entries.size());
+		for (LogEntry entry : entries) {
+			buffer.putInt(entry.getSlot());
+			buffer.putInt(entry.getProposalId());
+			writeBatch(buffer, entry.getBatch());
+		}
+	}
+
+	private static List<LogEntry> readEntries(ByteBuffer buffer) {
+		int count = buffer.getInt();
+		if (count < 0 || count > buffer.remaining() / MIN_ENTRY_BYTES) {
+			throw new IllegalArgumentException("Invalid entry count " + count + " for " + buffer.remaining() + " bytes.");
+		}
+		List<LogEntry> entries = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int slot = buffer.getInt();
+			int proposalId = buffer.getInt();
+			entries.add(new LogEntry(slot, proposalId, readBatch(buffer, Integer.MAX_VALUE)));
+		}
+		return entries;
+	}
+
+	private static int encodedSize(Batch batch) {
+		return EMPTY_BATCH_BYTES + batch.size() * TUPLE_BYTES;
+	}
+
+	private static void writeBatch(ByteBuffer buffer, Batch batch) {
+		buffer.putLong(batch.getId());
+		buffer.putInt(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			buffer.putInt(batch.getKey(i));
+			buffer.putInt(batch.getValue(i));
+			buffer.putInt(batch.getAction(i));
+		}
+	}
+
+	private static Batch readBatch(ByteBuffer buffer, int maxSize) {
+		long id = buffer.getLong();
+		int size = buffer.getInt();
+		if (size < 0 || size > buffer.remaining() / TUPLE_BYTES) {
+			throw new IllegalArgumentException("Invalid batch size " + size + " for " + buffer.remaining() + " bytes.");
+		}
+		if (size > maxSize) {
+			throw new IllegalArgumentException("A batch must hold at most " + maxSize + " operations, not " + size + ".");
+		}
+		int[] keys = new int[size];
+		int[] values = new int[size];
+		int[] actions = new int[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = buffer.getInt();
+			values[i] = buffer.getInt();
+			actions[i] = buffer.getInt();
+		}
+		return new Batch(id, keys, values, actions);
+	}
+}
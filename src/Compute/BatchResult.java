@@ -0,0 +1,34 @@
+/**
+ * The BatchResult class represents the responses to a batch of operations proposed on a leader,
+ * together with the index of the log the leader had applied once the batch was done.
+ * The server that forwarded the batch reports that index to its clients as covering their operations.
+ */
+package Compute;
+
+import java.io.Serializable;
+
+public class BatchResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long[] responses;
+	private final int appliedIndex;
+
+	/**
+	 * Constructs a BatchResult object.
+	 * @param responses The response to each operation of the batch, see {@link Response}.
+	 * @param appliedIndex The last slot of the log applied when the responses were produced.
+	 */
+	public BatchResult(long[] responses, int appliedIndex) {
+		this.responses = responses;
+		this.appliedIndex = appliedIndex;
+	}
+
+	public long[] getResponses() {
+		return responses;
+	}
+
+	public int getAppliedIndex() {
+		return appliedIndex;
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The BufferPool class recycles the direct ByteBuffers the NIO transport writes its frames into.
+ * A direct buffer goes to the socket without the copy the JDK makes for heap buffers, but is expensive
+ * to allocate, so buffers are taken from the pool for each frame and returned once the frame is written.
+ * Frames larger than the largest pooled size get a buffer of their own, left to the garbage collector.
+ */
+package Compute;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class BufferPool {
+
+	/** The size of the buffers most frames fit in. */
+	public static final int SMALL_BYTES = 4 * 1024;
+
+	/** The size of the buffers for frames carrying batches or log entries. */
+	public static final int LARGE_BYTES = 64 * 1024;
+
+	/** The maximum number of idle buffers kept of each size. */
+	private static final int MAX_IDLE = Integer.getInteger("paxos.nio.pooledBuffers", 256);
+
+	private static final Pool small = new Pool(SMALL_BYTES);
+	private static final Pool large = new Pool(LARGE_BYTES);
+
+	private BufferPool() {
+	}
+
+	/**
+	 * Takes a cleared direct buffer of at least the specified size.
+	 * @param bytes The number of bytes needed.
+	 * @return The buffer, to be released once it is no longer used.
+	 */
+	public static ByteBuffer acquire(int bytes) {
+		if (bytes <= SMALL_BYTES) {
+			return small.acquire();
+		}
+		if (bytes <= LARGE_BYTES) {
+			return large.acquire();
+		}
+		return ByteBuffer.allocateDirect(bytes);
+	}
+
+	/**
+	 * Returns a buffer to the pool. The buffer must not be used afterwards.
+	 * @param buffer The buffer taken with acquire.
+	 */
+	public static void release(ByteBuffer buffer) {
+		if (buffer.capacity() == SMALL_BYTES) {
+			small.release(buffer);
+		} else if (buffer.capacity() == LARGE_BYTES) {
+			large.release(buffer);
+		}
+	}
+
+	/** The idle buffers of one size. */
+	private static final class Pool {
+
+		private final int bytes;
+		private final Queue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger idleCount = new AtomicInteger();
+
+		Pool(int bytes) {
+			this.bytes = bytes;
+		}
+
+		ByteBuffer acquire() {
+			ByteBuffer buffer = idle.poll();
+			if (buffer == null) {
+				return ByteBuffer.allocateDirect(bytes);
+			}
+			idleCount.decrementAndGet();
+			buffer.clear();
+			return buffer;
+		}
+
+		void release(ByteBuffer buffer) {
+			if (!buffer.isDirect()) {
+				return;
+			}
+			if (idleCount.incrementAndGet() > MAX_IDLE) {
+				idleCount.decrementAndGet();
+				return;
+			}
+			idle.add(buffer);
+		}
+	}
+}
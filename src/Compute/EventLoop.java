@@ -0,0 +1,139 @@
+/**
+ * The EventLoop class runs one selector thread that serves many non-blocking connections.
+ * It accepts incoming connections on listening channels, reads complete frames from every connection
+ * and finishes writes that did not fit into the socket buffer, so that the number of connections costs
+ * no threads. Other threads hand work to the loop with execute, which wakes the selector up.
+ */
+package Compute;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class EventLoop implements Runnable {
+
+	private final Selector selector;
+
+	/** The tasks to run on the loop thread before the next select. */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructs an EventLoop object and starts its thread.
+	 * @param name The name of the loop thread.
+	 * @throws UncheckedIOException If the selector cannot be opened.
+	 */
+	public EventLoop(String name) {
+		try {
+			selector = Selector.open();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Thread thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Opens a connection to a server and serves it on this loop.
+	 * @param address The address of the server.
+	 * @param timeoutMillis The maximum time to wait for the connection to be established.
+	 * @param handler Receives the frames of the connection.
+	 * @return The connection.
+	 * @throws IOException If the server cannot be reached.
+	 */
+	public FrameConnection connect(InetSocketAddress address, int timeoutMillis, FrameConnection.Handler handler) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		try {
+			channel.socket().connect(address, timeoutMillis);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.configureBlocking(false);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		FrameConnection connection = new FrameConnection(channel, this, handler);
+		execute(() -> connection.register(selector));
+		return connection;
+	}
+
+	/**
+	 * Accepts connections on a listening channel and serves them on this loop.
+	 * @param server The bound listening channel.
+	 * @param handler Receives the frames of every accepted connection.
+	 * @throws IOException If the channel cannot be made non-blocking.
+	 */
+	public void listen(ServerSocketChannel server, FrameConnection.Handler handler) throws IOException {
+		server.configureBlocking(false);
+		execute(() -> {
+			try {
+				server.register(selector, SelectionKey.OP_ACCEPT, handler);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Runs a task on the loop thread.
+	 * @param task The task.
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+			try {
+				selector.select();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+			while (selected.hasNext()) {
+				SelectionKey key = selected.next();
+				selected.remove();
+				if (!key.isValid()) {
+					continue;
+				}
+				if (key.isAcceptable()) {
+					accept((ServerSocketChannel) key.channel(), (FrameConnection.Handler) key.attachment());
+					continue;
+				}
+				FrameConnection connection = (FrameConnection) key.attachment();
+				if (key.isWritable()) {
+					connection.flush();
+				}
+				if (key.isValid() && key.isReadable()) {
+					connection.read();
+				}
+			}
+		}
+	}
+
+	private void accept(ServerSocketChannel server, FrameConnection.Handler handler) {
+		try {
+			SocketChannel channel;
+			while ((channel = server.accept()) != null) {
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				channel.configureBlocking(false);
+				new FrameConnection(channel, this, handler).register(selector);
+			}
+		} catch (IOException e) {
+			// The client went away while connecting; keep accepting others
+		}
+	}
+}
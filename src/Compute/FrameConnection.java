@@ -0,0 +1,203 @@
+/**
+ * The FrameConnection class represents one non-blocking connection served by an EventLoop.
+ * Messages travel as frames: a big-endian int length followed by that many bytes. Any thread may send
+ * a frame; it is written right away if the socket buffer has room, and queued for the loop otherwise,
+ * and its buffer goes back to the BufferPool once written. Frames are received into one direct buffer
+ * per connection and handed to the handler in place, on the loop thread, one at a time.
+ */
+package Compute;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+public class FrameConnection {
+
+	/**
+	 * Receives the frames and the closing of a connection, on the loop thread.
+	 */
+	public interface Handler {
+
+		/**
+		 * Receives a frame. The handler must not block the loop thread, and must read what it needs
+		 * before returning, since the bytes of the frame are overwritten by the next read.
+		 * @param connection The connection the frame arrived on.
+		 * @param frame A view of the frame without its length, positioned at its first byte.
+		 */
+		void frameReceived(FrameConnection connection, ByteBuffer frame);
+
+		/**
+		 * Learns that the connection was closed, by either side or by an error.
+		 * @param connection The closed connection.
+		 */
+		void closed(FrameConnection connection);
+	}
+
+	/** The largest frame accepted, so that a corrupt length cannot exhaust the heap. */
+	private static final int MAX_FRAME_BYTES = Integer.getInteger("paxos.nio.maxFrameBytes", 64 << 20);
+
+	private final SocketChannel channel;
+	private final EventLoop loop;
+	private final Handler handler;
+
+	/** The bytes received but not yet handed to the handler. Used by the loop thread only. */
+	private ByteBuffer readBuffer = ByteBuffer.allocateDirect(BufferPool.LARGE_BYTES);
+
+	/** The frames waiting for room in the socket buffer. Guards the writes to the channel. */
+	private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+
+	private SelectionKey key;
+	private volatile boolean closed;
+
+	FrameConnection(SocketChannel channel, EventLoop loop, Handler handler) {
+		this.channel = channel;
+		this.loop = loop;
+		this.handler = handler;
+	}
+
+	/**
+	 * Sends a frame over the connection. The connection takes over the buffer of the frame and releases it.
+	 * @param frame The frame, including its length, from its position to its limit.
+	 * @throws IOException If the connection is closed or broken.
+	 */
+	public void send(ByteBuffer frame) throws IOException {
+		synchronized (writeQueue) {
+			if (closed) {
+				BufferPool.release(frame);
+				throw new ClosedChannelException();
+			}
+			if (writeQueue.isEmpty()) {
+				try {
+					channel.write(frame);
+				} catch (IOException e) {
+					BufferPool.release(frame);
+					loop.execute(this::close);
+					throw e;
+				}
+				if (!frame.hasRemaining()) {
+					BufferPool.release(frame);
+					return;
+				}
+			}
+			writeQueue.add(frame);
+			if (writeQueue.size() == 1) {
+				loop.execute(() -> interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE));
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the connection is still open.
+	 * @return True if the connection is open, false otherwise.
+	 */
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Closes the connection. Frames still queued are dropped.
+	 */
+	public void close() {
+		synchronized (writeQueue) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			for (ByteBuffer frame : writeQueue) {
+				BufferPool.release(frame);
+			}
+			writeQueue.clear();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Closed either way
+		}
+		handler.closed(this);
+	}
+
+	/**
+	 * Registers the connection with the selector of its loop. Called on the loop thread.
+	 */
+	void register(Selector selector) {
+		try {
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+		} catch (ClosedChannelException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Reads what the socket holds and hands every complete frame to the handler. Called on the loop thread.
+	 */
+	void read() {
+		try {
+			if (channel.read(readBuffer) < 0) {
+				close();
+				return;
+			}
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		readBuffer.flip();
+		while (readBuffer.remaining() >= Integer.BYTES) {
+			int length = readBuffer.getInt(readBuffer.position());
+			if (length < 0 || length > MAX_FRAME_BYTES) {
+				close();
+				return;
+			}
+			if (readBuffer.remaining() < Integer.BYTES + length) {
+				if (Integer.BYTES + length > readBuffer.capacity()) {
+					// Only frames larger than the usual buffer, such as snapshot chunks, need a larger one
+					ByteBuffer grown = ByteBuffer.allocateDirect(Integer.BYTES + length);
+					grown.put(readBuffer);
+					grown.flip();
+					readBuffer = grown;
+				}
+				break;
+			}
+			int start = readBuffer.position() + Integer.BYTES;
+			int limit = readBuffer.limit();
+			readBuffer.position(start).limit(start + length);
+			handler.frameReceived(this, readBuffer.slice());
+			readBuffer.limit(limit).position(start + length);
+		}
+		readBuffer.compact();
+		if (readBuffer.position() == 0 && readBuffer.capacity() > BufferPool.LARGE_BYTES) {
+			readBuffer = ByteBuffer.allocateDirect(BufferPool.LARGE_BYTES);
+		}
+	}
+
+	/**
+	 * Writes the queued frames as far as the socket buffer allows. Called on the loop thread.
+	 */
+	void flush() {
+		synchronized (writeQueue) {
+			try {
+				while (!writeQueue.isEmpty()) {
+					ByteBuffer head = writeQueue.peek();
+					channel.write(head);
+					if (head.hasRemaining()) {
+						return;
+					}
+					BufferPool.release(writeQueue.poll());
+				}
+			} catch (IOException e) {
+				loop.execute(this::close);
+				return;
+			}
+			interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	private void interestOps(int ops) {
+		if (key != null && key.isValid()) {
+			key.interestOps(ops);
+		}
+	}
+}
@@ -2,6 +2,7 @@
  * The IKVStore interface represents the remote service interface for key-value store operations.
  * It defines methods for getting, putting, and deleting key-value pairs, as well as methods for
  * coordinating distributed transactions.
+ * Operations answer with a {@link Response}: a status code and a value packed into a long.
  */
 package Compute;
 
@@ -14,61 +15,154 @@ public interface IKVStore extends Remote {
 	/**
 	 * Retrieves the value associated with the specified key.
 	 * @param key The key to retrieve the value for.
-	 * @return The value associated with the key.
+	 * @return The response, FOUND with the value or NOT_FOUND, see {@link Response}.
 	 * @throws RemoteException If a remote communication error occurs.
 	 */
-	String get(int key) throws RemoteException;
+	long get(int key) throws RemoteException;
 
 	/**
 	 * Associates the specified value with the specified key in the key-value store.
 	 * @param key The key to associate the value with.
 	 * @param value The value to be associated with the key.
-	 * @return A message indicating the success or failure of the operation.
+	 * @return The response, STORED or EXISTS with the value, see {@link Response}.
 	 * @throws RemoteException If a remote communication error occurs.
 	 */
-	String put(int key, int value) throws RemoteException;
+	long put(int key, int value) throws RemoteException;
 
 	/**
 	 * Deletes the key-value pair associated with the specified key.
 	 * @param key The key of the pair to be deleted.
-	 * @return A message indicating the success or failure of the operation.
+	 * @return The response, REMOVED with the value or NOT_FOUND, see {@link Response}.
 	 * @throws RemoteException If a remote communication error occurs.
 	 */
-	String delete(int key) throws RemoteException;
+	long delete(int key) throws RemoteException;
 
 	/**
-	 * Prepares the server for a distributed transaction.
-	 * @param proposalId The proposal identifier for the transaction.
-	 * @param key The key involved in the transaction.
-	 * @param value The value associated with the key.
-	 * @param action The action to be performed (e.g., PUT, GET, DEL).
-	 * @return True if the server is prepared for the transaction, false otherwise.
+	 * Retrieves the value associated with the specified key from this replica's local store,
+	 * without consensus, as long as the replica satisfies the requested freshness.
+	 * Otherwise the read falls back to a linearizable get.
+	 * @param key The key to retrieve the value for.
+	 * @param minIndex The lowest log index the read must reflect, e.g. the index of the client's last write.
+	 * @param maxStalenessMillis The maximum time, in milliseconds, the replica may lag behind the leader.
+	 * @return The value associated with the key, with the index it reflects.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	Result staleGet(int key, int minIndex, long maxStalenessMillis) throws RemoteException;
+
+	/**
+	 * Returns the last log index applied by this replica. After a put or delete on this replica
+	 * returns, the index covers that operation.
+	 * @return The last applied index.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	int appliedIndex() throws RemoteException;
+
+	/**
+	 * Applies several operations together, on any keys, as the value of one slot of the log.
+	 * The operations are applied atomically and in order, reads included, and the batch is forwarded
+	 * to the leader like a single operation.
+	 * @param batch The operations, encoded with {@link BatchCodec#encode(Batch)}.
+	 * If the batch reached the leader but its reply did not come back, the batch may have been applied,
+	 * so it is not proposed again and every operation answers NO_CONSENSUS.
+	 * @return The response of each operation, in order, see {@link Response}.
+	 * @throws RemoteException If a remote communication error occurs.
+	 * @throws IllegalArgumentException If the batch is malformed, empty, too large, or holds an unknown action.
+	 */
+	long[] submitBatch(byte[] batch) throws RemoteException;
+
+	/**
+	 * Prepares the server for a proposal covering every slot of the log from the specified slot onwards.
+	 * @param serverNumber The number of the proposing server.
+	 * @param proposalId The proposal identifier.
+	 * @param fromSlot The first slot the proposal covers.
+	 * @return The promise of the server, with the entries it accepted from the specified slot onwards,
+	 * encoded with {@link BatchCodec#encode(Promise)}.
 	 * @throws RemoteException If a remote communication error occurs.
 	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
 	 */
-	boolean prepare(int proposalId, int key, int value, int action) throws RemoteException, SocketTimeoutException;
+	byte[] prepareBatch(int serverNumber, int proposalId, int fromSlot) throws RemoteException, SocketTimeoutException;
 
 	/**
-	 * Accepts the proposal for a distributed transaction.
-	 * @param proposalId The proposal identifier for the transaction.
-	 * @param key The key involved in the transaction.
-	 * @param value The value associated with the key.
-	 * @param action The action to be performed (e.g., PUT, GET, DEL).
-	 * @return True if the server accepts the transaction, false otherwise.
+	 * Accepts a batch of operations for one slot of the log.
+	 * @param proposalId The proposal identifier.
+	 * @param slot The slot of the log.
+	 * @param batch The operations of the slot, encoded with {@link BatchCodec#encode(Batch)}.
+	 * @return The highest proposal identifier the server has promised: the specified one if it accepts
+	 * the batch, a higher one otherwise.
+	 * @throws RemoteException If a remote communication error occurs.
+	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
+	 */
+	int acceptBatch(int proposalId, int slot, byte[] batch) throws RemoteException, SocketTimeoutException;
+
+	/**
+	 * Commits the batch decided for one slot of the log.
+	 * Slots are applied strictly in order, and the operations of a batch atomically.
+	 * @param slot The slot of the log.
+	 * @param batch The operations of the slot, encoded with {@link BatchCodec#encode(Batch)}.
+	 * @return The response of each operation, or an empty array if earlier slots are still missing.
 	 * @throws RemoteException If a remote communication error occurs.
 	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
 	 */
-	boolean accept(int proposalId, int key, int value, int action) throws RemoteException, SocketTimeoutException;
+	long[] commitBatch(int slot, byte[] batch) throws RemoteException, SocketTimeoutException;
 
 	/**
-	 * Commits a distributed transaction.
-	 * @param key The key involved in the transaction.
+	 * Proposes an operation on this server, possibly batched with others, without forwarding it again.
+	 * Used by servers that forward client requests to the current leader.
+	 * @param key The key involved in the operation.
 	 * @param value The value associated with the key.
 	 * @param action The action to be performed (e.g., PUT, GET, DEL).
-	 * @return A message indicating the success or failure of the commit operation.
+	 * @return The response of the operation, with the index this server had applied once the operation was done.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	Result propose(int key, int value, int action) throws RemoteException;
+
+	/**
+	 * Proposes a batch of operations on this server without forwarding it again.
+	 * Used by servers that forward batches to the current leader.
+	 * @param batch The operations, encoded with {@link BatchCodec#encode(Batch)}.
+	 * @return The response of each operation, with the index this server had applied once the batch was done.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	BatchResult proposeBatch(byte[] batch) throws RemoteException;
+
+	/**
+	 * Receives a heartbeat from the current leader.
+	 * @param serverNumber The number of the leader server.
+	 * @param proposalId The proposal identifier the leader won the prepare phase with.
+	 * @param commitIndex The last log index the leader has applied.
+	 * @return True if the server recognizes the leader, false if it has promised a higher proposal.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	boolean heartbeat(int serverNumber, int proposalId, int commitIndex) throws RemoteException;
+
+	/**
+	 * Returns the highest slot of the log this server has accepted.
+	 * Any operation acknowledged to a client was accepted by a majority, so the highest slot reported
+	 * by a majority is a safe index to wait for before answering a read locally.
+	 * @return The highest accepted slot, or 0 if nothing was accepted yet.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	int readIndex() throws RemoteException;
+
+	/**
+	 * Returns the decided entries of the log from the specified slot onwards, for a replica catching up.
+	 * @param fromSlot The first slot requested.
+	 * @param maxEntries The maximum number of entries to return.
+	 * @return The entries and the last slot this server has applied, encoded with {@link BatchCodec#encode(LogChunk)}.
+	 * No entries are returned if this server has discarded the requested slot after a snapshot.
+	 * @throws RemoteException If a remote communication error occurs.
+	 */
+	byte[] fetchLog(int fromSlot, int maxEntries) throws RemoteException;
+
+	/**
+	 * Returns part of the last snapshot of the store written by this server, for a replica too far behind
+	 * to catch up on the log. The snapshot starts with its slot at byte 4 and its number of entries at byte 8.
+	 * @param index The slot of the snapshot being fetched, or 0 for the last snapshot whatever its slot.
+	 * @param offset The offset of the first byte requested.
+	 * @param length The maximum number of bytes to return.
+	 * @return The bytes of the snapshot, or none if this server has no snapshot of the requested slot anymore.
 	 * @throws RemoteException If a remote communication error occurs.
-	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
 	 */
-	String commit(int key, int value, int action) throws RemoteException, SocketTimeoutException;
+	byte[] fetchSnapshot(int index, long offset, int length) throws RemoteException;
 
 }
@@ -0,0 +1,32 @@
+/**
+ * The LogChunk class represents the reply of a server to a replica catching up on the log.
+ * It carries consecutive decided entries and the last slot the replying server has applied, so that
+ * an empty chunk from a server that is ahead tells the replica to fetch a snapshot instead.
+ */
+package Compute;
+
+import java.util.List;
+
+public class LogChunk {
+
+	private final int lastApplied;
+	private final List<LogEntry> entries;
+
+	/**
+	 * Constructs a LogChunk object.
+	 * @param lastApplied The last slot the replying server has applied.
+	 * @param entries The decided entries from the requested slot onwards, or none if the server no longer has them.
+	 */
+	public LogChunk(int lastApplied, List<LogEntry> entries) {
+		this.lastApplied = lastApplied;
+		this.entries = entries;
+	}
+
+	public int getLastApplied() {
+		return lastApplied;
+	}
+
+	public List<LogEntry> getEntries() {
+		return entries;
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * The LogEntry class represents the batch of operations accepted or decided for one slot of the replicated log.
+ * It is exchanged between servers during the prepare phase and when catching up.
+ */
+package Compute;
+
+public class LogEntry {
+
+	private final int slot;
+	private final int proposalId;
+	private final Batch batch;
+
+	/**
+	 * Constructs a LogEntry object.
+	 * @param slot The slot of the log the operation is in.
+	 * @param proposalId The proposal identifier the operation was accepted with.
+	 * @param batch The operations of the slot.
+	 */
+	public LogEntry(int slot, int proposalId, Batch batch) {
+		this.slot = slot;
+		this.proposalId = proposalId;
+		this.batch = batch;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	public int getProposalId() {
+		return proposalId;
+	}
+
+	public Batch getBatch() {
+		return batch;
+	}
+}
@@ -0,0 +1,391 @@
+/**
+ * The NioStub class is a client of IKVStore over the NIO transport instead of RMI.
+ * It keeps one persistent connection to the server and multiplexes every concurrent call over it:
+ * each request carries an identifier, and the reply with the same identifier completes the waiting call,
+ * whatever order the server answers in. The connections of all stubs are served by one shared EventLoop.
+ * The reply is decoded straight from the receive buffer on the loop thread, and primitive return values
+ * such as responses are handed to the caller without boxing.
+ * A call fails with a RemoteException if the connection breaks, times out, or the server method threw;
+ * only with a ConnectException if the request certainly did not reach the server.
+ * The client operations also have asynchronous variants, which send the request and return a
+ * CompletableFuture at once, so that one thread can keep any number of requests in flight on the connection.
+ * The future is completed on the loop thread: actions chained to it without an executor run there
+ * and must not block.
+ */
+package Compute;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+public class NioStub implements IKVStore, FrameConnection.Handler {
+
+	/** The maximum time, in milliseconds, to wait for a connection to be established. */
+	private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("paxos.nio.connectTimeoutMs", 1000);
+
+	/** The maximum time, in milliseconds, to wait for the reply to a call. */
+	private static final long CALL_TIMEOUT_MS = Long.getLong("paxos.nio.callTimeoutMs", 30000);
+
+	/** The loop serving the connections of every stub of this process. */
+	private static EventLoop sharedLoop;
+
+	private final String address;
+	private final FrameConnection connection;
+	private final AtomicInteger nextRequestId = new AtomicInteger();
+
+	/** The calls waiting for their reply, by request identifier. */
+	private final ConcurrentMap<Integer, Reply> pending = new ConcurrentHashMap<>();
+
+	private NioStub(String host, int port) throws IOException {
+		this.address = host + ":" + port;
+		this.connection = loop().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS, this);
+	}
+
+	/**
+	 * Connects to a server listening for the NIO transport.
+	 * @param host The host of the server.
+	 * @param port The NIO port of the server.
+	 * @return The stub.
+	 * @throws ConnectException If the server cannot be reached.
+	 */
+	public static NioStub connect(String host, int port) throws ConnectException {
+		try {
+			return new NioStub(host, port);
+		} catch (IOException e) {
+			throw new ConnectException("Cannot connect to " + host + ":" + port + ".", e);
+		}
+	}
+
+	private static synchronized EventLoop loop() {
+		if (sharedLoop == null) {
+			sharedLoop = new EventLoop("paxos-nio-client");
+		}
+		return sharedLoop;
+	}
+
+	/**
+	 * Checks whether the connection of this stub is still open.
+	 * @return True if calls can still be made, false otherwise.
+	 */
+	public boolean isOpen() {
+		return connection.isOpen();
+	}
+
+	/**
+	 * Closes the connection of this stub, failing the calls still waiting for their reply.
+	 */
+	public void close() {
+		connection.close();
+	}
+
+	@Override
+	public long get(int key) throws RemoteException {
+		return invokeForLong(request(RpcCodec.GET).putInt(key), ByteBuffer::getLong);
+	}
+
+	@Override
+	public long put(int key, int value) throws RemoteException {
+		return invokeForLong(request(RpcCodec.PUT).putInt(key).putInt(value), ByteBuffer::getLong);
+	}
+
+	@Override
+	public long delete(int key) throws RemoteException {
+		return invokeForLong(request(RpcCodec.DELETE).putInt(key), ByteBuffer::getLong);
+	}
+
+	/**
+	 * Retrieves the value associated with the specified key without waiting for the reply.
+	 * @param key The key to retrieve the value for.
+	 * @return The future response, FOUND with the value or NOT_FOUND, see {@link Response}.
+	 */
+	public CompletableFuture<Long> getAsync(int key) {
+		return invokeAsync(request(RpcCodec.GET).putInt(key), ByteBuffer::getLong);
+	}
+
+	/**
+	 * Associates the specified value with the specified key without waiting for the reply.
+	 * @param key The key to associate the value with.
+	 * @param value The value to be associated with the key.
+	 * @return The future response, STORED or EXISTS with the value, see {@link Response}.
+	 */
+	public CompletableFuture<Long> putAsync(int key, int value) {
+		return invokeAsync(request(RpcCodec.PUT).putInt(key).putInt(value), ByteBuffer::getLong);
+	}
+
+	/**
+	 * Deletes the key-value pair associated with the specified key without waiting for the reply.
+	 * @param key The key of the pair to be deleted.
+	 * @return The future response, REMOVED with the value or NOT_FOUND, see {@link Response}.
+	 */
+	public CompletableFuture<Long> deleteAsync(int key) {
+		return invokeAsync(request(RpcCodec.DELETE).putInt(key), ByteBuffer::getLong);
+	}
+
+	/**
+	 * Applies several operations together as the value of one slot of the log without waiting for the reply.
+	 * @param batch The operations, encoded with {@link BatchCodec#encode(Batch)}.
+	 * @return The future response of each operation, in order, see {@link Response}.
+	 */
+	public CompletableFuture<long[]> submitBatchAsync(byte[] batch) {
+		return invokeAsync(request(RpcCodec.SUBMIT_BATCH).putBytes(batch), RpcCodec::getLongs);
+	}
+
+	@Override
+	public Result staleGet(int key, int minIndex, long maxStalenessMillis) throws RemoteException {
+		return invoke(request(RpcCodec.STALE_GET).putInt(key).putInt(minIndex).putLong(maxStalenessMillis), RpcCodec::getResult);
+	}
+
+	@Override
+	public int appliedIndex() throws RemoteException {
+		return (int) invokeForLong(request(RpcCodec.APPLIED_INDEX), ByteBuffer::getInt);
+	}
+
+	@Override
+	public long[] submitBatch(byte[] batch) throws RemoteException {
+		return invoke(request(RpcCodec.SUBMIT_BATCH).putBytes(batch), RpcCodec::getLongs);
+	}
+
+	@Override
+	public byte[] prepareBatch(int serverNumber, int proposalId, int fromSlot) throws RemoteException {
+		return invoke(request(RpcCodec.PREPARE_BATCH).putInt(serverNumber).putInt(proposalId).putInt(fromSlot), RpcCodec::getBytes);
+	}
+
+	@Override
+	public int acceptBatch(int proposalId, int slot, byte[] batch) throws RemoteException {
+		return (int) invokeForLong(request(RpcCodec.ACCEPT_BATCH).putInt(proposalId).putInt(slot).putBytes(batch), ByteBuffer::getInt);
+	}
+
+	@Override
+	public long[] commitBatch(int slot, byte[] batch) throws RemoteException {
+		return invoke(request(RpcCodec.COMMIT_BATCH).putInt(slot).putBytes(batch), RpcCodec::getLongs);
+	}
+
+	@Override
+	public Result propose(int key, int value, int action) throws RemoteException {
+		return invoke(request(RpcCodec.PROPOSE).putInt(key).putInt(value).putInt(action), RpcCodec::getResult);
+	}
+
+	@Override
+	public BatchResult proposeBatch(byte[] batch) throws RemoteException {
+		return invoke(request(RpcCodec.PROPOSE_BATCH).putBytes(batch), RpcCodec::getBatchResult);
+	}
+
+	@Override
+	public boolean heartbeat(int serverNumber, int proposalId, int commitIndex) throws RemoteException {
+		return invokeForLong(request(RpcCodec.HEARTBEAT).putInt(serverNumber).putInt(proposalId).putInt(commitIndex), ByteBuffer::get) != 0;
+	}
+
+	@Override
+	public int readIndex() throws RemoteException {
+		return (int) invokeForLong(request(RpcCodec.READ_INDEX), ByteBuffer::getInt);
+	}
+
+	@Override
+	public byte[] fetchLog(int fromSlot, int maxEntries) throws RemoteException {
+		return invoke(request(RpcCodec.FETCH_LOG).putInt(fromSlot).putInt(maxEntries), RpcCodec::getBytes);
+	}
+
+	@Override
+	public byte[] fetchSnapshot(int index, long offset, int length) throws RemoteException {
+		return invoke(request(RpcCodec.FETCH_SNAPSHOT).putInt(index).putLong(offset).putInt(length), RpcCodec::getBytes);
+	}
+
+	@Override
+	public void frameReceived(FrameConnection connection, ByteBuffer frame) {
+		Reply call = pending.get(frame.getInt());
+		if (call != null) {
+			call.complete(frame);
+		}
+	}
+
+	@Override
+	public void closed(FrameConnection connection) {
+		// The server may have received the requests still waiting, so this is not a ConnectException
+		RemoteException broken = new RemoteException("The connection to " + address + " was closed before the reply.");
+		for (Reply call : pending.values()) {
+			call.fail(broken);
+		}
+	}
+
+	private RpcCodec.Writer request(byte method) {
+		return new RpcCodec.Writer(nextRequestId.incrementAndGet(), method);
+	}
+
+	/**
+	 * Makes a call whose return value is an object.
+	 * @return The return value, decoded from the reply on the loop thread.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T invoke(RpcCodec.Writer request, Function<ByteBuffer, T> decoder) throws RemoteException {
+		return (T) invoke(request, new PendingCall(decoder, null)).value;
+	}
+
+	/**
+	 * Makes a call whose return value is a primitive, without boxing it.
+	 * @return The return value, decoded from the reply on the loop thread.
+	 */
+	private long invokeForLong(RpcCodec.Writer request, ToLongFunction<ByteBuffer> decoder) throws RemoteException {
+		return invoke(request, new PendingCall(null, decoder)).primitive;
+	}
+
+	/**
+	 * Sends a request and waits for its reply.
+	 * @return The completed call.
+	 */
+	private PendingCall invoke(RpcCodec.Writer request, PendingCall call) throws RemoteException {
+		int requestId = request.getRequestId();
+		pending.put(requestId, call);
+		try {
+			if (!connection.isOpen()) {
+				BufferPool.release(request.toFrame());
+				throw new ConnectException("The connection to " + address + " is closed.");
+			}
+			connection.send(request.toFrame());
+			call.await(CALL_TIMEOUT_MS);
+			return call;
+		} catch (RemoteException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new ConnectException("Cannot send to " + address + ".", e);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while waiting for " + address + ".");
+		} finally {
+			pending.remove(requestId);
+		}
+	}
+
+	/**
+	 * Sends a request without waiting for its reply.
+	 * @return The future return value, decoded from the reply on the loop thread. It fails with a
+	 * RemoteException if the connection breaks or the server method threw, or with a TimeoutException
+	 * if no reply arrives in time.
+	 */
+	private <T> CompletableFuture<T> invokeAsync(RpcCodec.Writer request, Function<ByteBuffer, T> decoder) {
+		int requestId = request.getRequestId();
+		AsyncCall<T> call = new AsyncCall<>(decoder);
+		pending.put(requestId, call);
+		call.future.whenComplete((value, failure) -> pending.remove(requestId));
+		if (!connection.isOpen()) {
+			BufferPool.release(request.toFrame());
+			call.fail(new ConnectException("The connection to " + address + " is closed."));
+			return call.future;
+		}
+		try {
+			connection.send(request.toFrame());
+		} catch (IOException e) {
+			call.fail(new ConnectException("Cannot send to " + address + ".", e));
+		}
+		return call.future.orTimeout(CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/** The receiver of the reply to a call. */
+	private interface Reply {
+
+		/**
+		 * Takes the reply, which is only valid during the call.
+		 * @param frame The reply, positioned after its request identifier.
+		 */
+		void complete(ByteBuffer frame);
+
+		/**
+		 * Fails the call, unless its reply was already received.
+		 * @param cause The failure.
+		 */
+		void fail(RemoteException cause);
+	}
+
+	/** A call whose caller does not wait for its reply. */
+	private static final class AsyncCall<T> implements Reply {
+
+		private final Function<ByteBuffer, T> decoder;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		AsyncCall(Function<ByteBuffer, T> decoder) {
+			this.decoder = decoder;
+		}
+
+		@Override
+		public void complete(ByteBuffer frame) {
+			if (frame.get() == RpcCodec.ERROR) {
+				future.completeExceptionally(new ServerException(RpcCodec.getString(frame)));
+				return;
+			}
+			try {
+				future.complete(decoder.apply(frame));
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public void fail(RemoteException cause) {
+			future.completeExceptionally(cause);
+		}
+	}
+
+	/** A call waiting for its reply. */
+	private final class PendingCall implements Reply {
+
+		private final Function<ByteBuffer, ?> decoder;
+		private final ToLongFunction<ByteBuffer> primitiveDecoder;
+		private Object value;
+		private long primitive;
+		private RemoteException failure;
+		private boolean done;
+
+		PendingCall(Function<ByteBuffer, ?> decoder, ToLongFunction<ByteBuffer> primitiveDecoder) {
+			this.decoder = decoder;
+			this.primitiveDecoder = primitiveDecoder;
+		}
+
+		/**
+		 * Decodes the reply, which is only valid during the call, and wakes up the caller.
+		 */
+		@Override
+		public synchronized void complete(ByteBuffer frame) {
+			if (frame.get() == RpcCodec.ERROR) {
+				failure = new ServerException(RpcCodec.getString(frame));
+			} else if (decoder != null) {
+				value = decoder.apply(frame);
+			} else {
+				primitive = primitiveDecoder.applyAsLong(frame);
+			}
+			done = true;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void fail(RemoteException cause) {
+			if (!done) {
+				failure = cause;
+				done = true;
+				notifyAll();
+			}
+		}
+
+		synchronized void await(long timeoutMillis) throws RemoteException, InterruptedException {
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+			while (!done) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new RemoteException("No reply from " + address + " within " + timeoutMillis + " ms.");
+				}
+				wait(remaining);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * The Promise class represents the reply of an acceptor to a prepare request.
+ * A granted promise carries the entries the acceptor has already accepted, so that a new leader
+ * can finish the slots a previous leader left undecided. Either way it carries the highest proposal
+ * identifier the acceptor has promised, so that a refused proposer can start its next proposal above it.
+ */
+package Compute;
+
+import java.util.List;
+
+public class Promise {
+
+	private final boolean granted;
+	private final int promisedProposalId;
+	private final List<LogEntry> acceptedEntries;
+
+	/**
+	 * Constructs a Promise object.
+	 * @param granted True if the acceptor promised the proposal, false otherwise.
+	 * @param promisedProposalId The highest proposal identifier the acceptor has promised.
+	 * @param acceptedEntries The entries accepted from the requested slot onwards.
+	 */
+	public Promise(boolean granted, int promisedProposalId, List<LogEntry> acceptedEntries) {
+		this.granted = granted;
+		this.promisedProposalId = promisedProposalId;
+		this.acceptedEntries = acceptedEntries;
+	}
+
+	public boolean isGranted() {
+		return granted;
+	}
+
+	public int getPromisedProposalId() {
+		return promisedProposalId;
+	}
+
+	public List<LogEntry> getAcceptedEntries() {
+		return acceptedEntries;
+	}
+}
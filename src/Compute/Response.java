@@ -0,0 +1,59 @@
+/**
+ * The Response class encodes the outcome of an operation as a status code and a value packed into one long,
+ * so that responses travel and are stored without any object or text. The status takes the high int and the
+ * value the low int: the value stored, found or removed, or the number of servers that replied for a request
+ * that reached no consensus. Clients turn a response into text with the key they sent, if they want to.
+ */
+package Compute;
+
+public final class Response {
+
+	/** A put stored the value. */
+	public static final int STORED = 1;
+
+	/** A put found the key already present and stored nothing. */
+	public static final int EXISTS = 2;
+
+	/** A get found the value. */
+	public static final int FOUND = 3;
+
+	/** A get or delete did not find the key. */
+	public static final int NOT_FOUND = 4;
+
+	/** A delete removed the value. */
+	public static final int REMOVED = 5;
+
+	/** The request reached no consensus; the value is the number of servers that replied positively. */
+	public static final int NO_CONSENSUS = 6;
+
+	private Response() {
+	}
+
+	/**
+	 * Packs a status code and a value into a response.
+	 * @param status The status code.
+	 * @param value The value of the response.
+	 * @return The response.
+	 */
+	public static long of(int status, int value) {
+		return (long) status << 32 | (value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the status code of a response.
+	 * @param response The response.
+	 * @return The status code.
+	 */
+	public static int statusOf(long response) {
+		return (int) (response >>> 32);
+	}
+
+	/**
+	 * Returns the value of a response.
+	 * @param response The response.
+	 * @return The value.
+	 */
+	public static int valueOf(long response) {
+		return (int) response;
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ * The Result class represents the response to an operation together with the index of the log it reflects.
+ * Clients that read from any replica remember the highest index they have seen and ask later reads
+ * to reflect at least that index, which gives them read-your-writes and monotonic reads.
+ */
+package Compute;
+
+import java.io.Serializable;
+
+public class Result implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long response;
+	private final int appliedIndex;
+	private final long stalenessMillis;
+
+	/**
+	 * Constructs a Result object.
+	 * @param response The response to the operation, see {@link Response}.
+	 * @param appliedIndex The last slot of the log applied when the response was produced.
+	 * @param stalenessMillis How far, in milliseconds, the replica may lag behind the leader.
+	 */
+	public Result(long response, int appliedIndex, long stalenessMillis) {
+		this.response = response;
+		this.appliedIndex = appliedIndex;
+		this.stalenessMillis = stalenessMillis;
+	}
+
+	public long getResponse() {
+		return response;
+	}
+
+	public int getAppliedIndex() {
+		return appliedIndex;
+	}
+
+	public long getStalenessMillis() {
+		return stalenessMillis;
+	}
+}
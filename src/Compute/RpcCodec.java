@@ -0,0 +1,165 @@
+/**
+ * The RpcCodec class defines the frames the NIO transport carries the calls of IKVStore in.
+ * A request is framed as its length, a request identifier, the method code and the arguments; the reply
+ * carries the same request identifier, so that many calls share one connection and complete in any order,
+ * followed by a status code and either the return value or the message of the error.
+ * Every field has a fixed width and position: ints and longs are big-endian, a response is one long
+ * (see {@link Response}), byte arrays and response arrays are prefixed with their length, and only the
+ * message of an error is text. Frames are written straight into pooled direct buffers and read straight
+ * from the buffer the connection received them in, with no intermediate stream or object.
+ */
+package Compute;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public final class RpcCodec {
+
+	public static final byte GET = 1;
+	public static final byte PUT = 2;
+	public static final byte DELETE = 3;
+	public static final byte STALE_GET = 4;
+	public static final byte APPLIED_INDEX = 5;
+	public static final byte PREPARE_BATCH = 6;
+	public static final byte ACCEPT_BATCH = 7;
+	public static final byte COMMIT_BATCH = 8;
+	public static final byte PROPOSE = 9;
+	public static final byte PROPOSE_BATCH = 10;
+	public static final byte HEARTBEAT = 11;
+	public static final byte READ_INDEX = 12;
+	public static final byte FETCH_LOG = 13;
+	public static final byte FETCH_SNAPSHOT = 14;
+	public static final byte SUBMIT_BATCH = 15;
+
+	/** The status of a reply carrying the return value of the call. */
+	public static final byte OK = 0;
+
+	/** The status of a reply carrying the message of the exception the call threw. */
+	public static final byte ERROR = 1;
+
+	private RpcCodec() {
+	}
+
+	/**
+	 * Writes one frame into a pooled direct buffer: its length, a request identifier, a method or status code
+	 * and the fields added to it. The buffer is replaced by a larger one if the fields do not fit.
+	 */
+	public static final class Writer {
+
+		private final int requestId;
+		private ByteBuffer buffer;
+
+		/**
+		 * Starts a frame.
+		 * @param requestId The identifier of the request.
+		 * @param code The method code of a request, or the status of a reply.
+		 */
+		public Writer(int requestId, byte code) {
+			this.requestId = requestId;
+			this.buffer = BufferPool.acquire(BufferPool.SMALL_BYTES);
+			buffer.putInt(0).putInt(requestId).put(code);
+		}
+
+		public int getRequestId() {
+			return requestId;
+		}
+
+		public Writer putByte(byte value) {
+			reserve(1).put(value);
+			return this;
+		}
+
+		public Writer putInt(int value) {
+			reserve(Integer.BYTES).putInt(value);
+			return this;
+		}
+
+		public Writer putLong(long value) {
+			reserve(Long.BYTES).putLong(value);
+			return this;
+		}
+
+		public Writer putBytes(byte[] value) {
+			reserve(Integer.BYTES + value.length).putInt(value.length).put(value);
+			return this;
+		}
+
+		public Writer putLongs(long[] values) {
+			reserve(Integer.BYTES + values.length * Long.BYTES).putInt(values.length);
+			for (long value : values) {
+				buffer.putLong(value);
+			}
+			return this;
+		}
+
+		public Writer putResult(Result result) {
+			reserve(2 * Long.BYTES + Integer.BYTES).putLong(result.getResponse())
+					.putInt(result.getAppliedIndex()).putLong(result.getStalenessMillis());
+			return this;
+		}
+
+		public Writer putBatchResult(BatchResult result) {
+			putLongs(result.getResponses());
+			reserve(Integer.BYTES).putInt(result.getAppliedIndex());
+			return this;
+		}
+
+		public Writer putString(String value) {
+			return putBytes(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Finishes the frame. The writer must not be used afterwards.
+		 * @return The frame, including its length, in a pooled buffer that whoever sends it must release.
+		 */
+		public ByteBuffer toFrame() {
+			buffer.putInt(0, buffer.position() - Integer.BYTES);
+			buffer.flip();
+			return buffer;
+		}
+
+		/**
+		 * Makes room for the specified number of bytes.
+		 * @return The buffer to write them to.
+		 */
+		private ByteBuffer reserve(int bytes) {
+			if (buffer.remaining() < bytes) {
+				ByteBuffer grown = BufferPool.acquire(Math.max(2 * buffer.capacity(), buffer.position() + bytes));
+				buffer.flip();
+				grown.put(buffer);
+				BufferPool.release(buffer);
+				buffer = grown;
+			}
+			return buffer;
+		}
+	}
+
+	public static byte[] getBytes(ByteBuffer frame) {
+		byte[] value = new byte[frame.getInt()];
+		frame.get(value);
+		return value;
+	}
+
+	public static long[] getLongs(ByteBuffer frame) {
+		long[] values = new long[frame.getInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = frame.getLong();
+		}
+		return values;
+	}
+
+	public static Result getResult(ByteBuffer frame) {
+		long response = frame.getLong();
+		int appliedIndex = frame.getInt();
+		return new Result(response, appliedIndex, frame.getLong());
+	}
+
+	public static BatchResult getBatchResult(ByteBuffer frame) {
+		long[] responses = getLongs(frame);
+		return new BatchResult(responses, frame.getInt());
+	}
+
+	public static String getString(ByteBuffer frame) {
+		return new String(getBytes(frame), StandardCharsets.UTF_8);
+	}
+}
@@ -1,65 +1,251 @@
 /**
  * The Acceptor class represents a component responsible for accepting or rejecting proposals
  * in a distributed consensus protocol.
+ * Promises and accepted entries are written to a write-ahead log before they are answered, and replayed
+ * when the server restarts, so that a restarted acceptor never breaks a promise it made before.
+ * -Dpaxos.wal=false keeps them in memory only.
  */
 package Server;
 
+import Compute.Batch;
+import Compute.LogEntry;
+import Compute.Promise;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.SocketTimeoutException;
+import java.nio.file.Path;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+public class Acceptor implements Runnable {
 
-public class Acceptor extends KVStore implements Runnable {
+	/** Whether promises and accepted entries are written to the write-ahead log. */
+	private static final boolean WAL = Boolean.parseBoolean(System.getProperty("paxos.wal", "true"));
 
 	private final Logger logger = new Logger();
 
-	private static int failureCounter;
-	private static int lastAcceptedProposalId;
+	private int failureCounter;
+	private int lastAcceptedProposalId;
 	private boolean isActive;
 	private int serverNumber;
+	private volatile int leaderNumber;
+	private volatile long leaderLeaseExpiry;
+
+	/** The entry accepted for each slot of the log. */
+	private final TreeMap<Integer, LogEntry> acceptedEntries = new TreeMap<>();
+
+	/** The last slot whose entry was discarded because it is in a snapshot of the store. */
+	private int compactedThrough;
+
+	/** The write-ahead log, or null if it is disabled or the acceptor is stopped. */
+	private volatile AcceptorLog log;
+
+	/**
+	 * Until this time no promise is made after a restart, since a lease granted before the restart
+	 * may still be running and is not in the log.
+	 */
+	private long restartLeaseExpiry;
+
+	/** The directory holding the write-ahead log of this server. */
+	private final Path dataDirectory;
+
+	/**
+	 * Constructs an Acceptor object.
+	 * @param dataDirectory The directory holding the write-ahead log of the server.
+	 */
+	public Acceptor(Path dataDirectory) {
+		this.dataDirectory = dataDirectory;
+	}
 
 	/**
 	 * Sets the proposal identifier for this acceptor.
 	 * @param lastAcceptedProposalId The last accepted proposal identifier to set.
 	 */
 	public void setLastAcceptedProposalId(int lastAcceptedProposalId) {
-		Acceptor.lastAcceptedProposalId = lastAcceptedProposalId;
+		this.lastAcceptedProposalId = lastAcceptedProposalId;
 	}
 
 	/**
-	 * Starts the acceptor.
+	 * Returns the highest proposal identifier this acceptor has promised or accepted.
+	 * @return The proposal identifier.
+	 */
+	public synchronized int getLastAcceptedProposalId() {
+		return lastAcceptedProposalId;
+	}
+
+	/**
+	 * Starts the acceptor, replaying the write-ahead log of the data directory.
+	 * @throws UncheckedIOException If the log cannot be opened.
 	 */
 	public void start() {
 		isActive = true;
+		if (!WAL) {
+			return;
+		}
+		try {
+			log = AcceptorLog.open(dataDirectory.resolve("acceptor.wal"),
+					proposalId -> setLastAcceptedProposalId(Math.max(lastAcceptedProposalId, proposalId)),
+					entry -> {
+						setLastAcceptedProposalId(Math.max(lastAcceptedProposalId, entry.getProposalId()));
+						acceptedEntries.put(entry.getSlot(), entry);
+					});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (lastAcceptedProposalId != 0 || !acceptedEntries.isEmpty()) {
+			restartLeaseExpiry = System.currentTimeMillis() + Constants.LEADER_LEASE_MS;
+		}
+	}
+
+	/**
+	 * Stops the acceptor, closing the write-ahead log.
+	 */
+	public synchronized void stop() {
+		isActive = false;
+		if (log == null) {
+			return;
+		}
+		try {
+			log.close();
+		} catch (IOException e) {
+			// Closed either way
+		}
+		log = null;
 	}
 
 	/**
-	 * Accepts a proposal.
+	 * Accepts a batch of operations for one slot of the log.
 	 * @param proposalId The proposal identifier.
-	 * @param key The key involved in the proposal.
-	 * @param value The value associated with the key.
-	 * @param requestType The type of request (e.g., PUT, GET, DEL).
-	 * @return True if the proposal is accepted, false otherwise.
+	 * @param slot The slot of the log.
+	 * @param batch The operations of the slot.
+	 * @return The highest proposal identifier promised: the specified one if the proposal is accepted,
+	 * a higher one otherwise.
 	 * @throws RemoteException If a remote communication error occurs.
 	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
 	 */
-	public boolean accept(int proposalId, int key, int value, int requestType) throws RemoteException, SocketTimeoutException {
-		return handleFaults(proposalId, key, value, requestType);
+	public int accept(int proposalId, int slot, Batch batch) throws RemoteException, SocketTimeoutException {
+		handleFaults();
+		long record;
+		synchronized (this) {
+			if (proposalId < lastAcceptedProposalId) {
+				return lastAcceptedProposalId;
+			}
+			setLastAcceptedProposalId(proposalId);
+			LogEntry entry = new LogEntry(slot, proposalId, batch);
+			acceptedEntries.put(slot, entry);
+			record = log == null ? 0 : log.appendAccept(entry);
+		}
+		awaitDurable(record);
+		return proposalId;
 	}
 
 	/**
-	 * Prepares for a distributed transaction.
+	 * Promises not to accept proposals lower than the specified one, for every slot from the specified slot onwards.
+	 * The promise is refused while another server holds the leader lease granted by this acceptor,
+	 * so that the leader can serve reads locally until its lease ends.
+	 * @param serverNumber The number of the proposing server.
 	 * @param proposalId The proposal identifier.
-	 * @param key The key involved in the proposal.
-	 * @param value The value associated with the key.
-	 * @param requestType The type of request (e.g., PUT, GET, DEL).
-	 * @return True if the preparation is successful, false otherwise.
+	 * @param fromSlot The first slot the proposal covers.
+	 * @return The promise, carrying the entries accepted from the specified slot onwards if it is granted.
 	 * @throws RemoteException If a remote communication error occurs.
 	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
 	 */
-	public boolean prepare(int proposalId, int key, int value, int requestType) throws RemoteException, SocketTimeoutException {
-		return handleFaults(proposalId, key, value, requestType);
+	public Promise prepare(int serverNumber, int proposalId, int fromSlot) throws RemoteException, SocketTimeoutException {
+		handleFaults();
+		long record = 0;
+		Promise promise;
+		synchronized (this) {
+			int leader = getLeader();
+			// A proposer that has not applied the discarded slots could not recover them from this acceptor
+			if (proposalId < lastAcceptedProposalId || (leader != 0 && leader != serverNumber)
+					|| System.currentTimeMillis() < restartLeaseExpiry || fromSlot <= compactedThrough) {
+				return new Promise(false, lastAcceptedProposalId, new ArrayList<>());
+			}
+			if (log != null && proposalId > lastAcceptedProposalId) {
+				record = log.appendPromise(proposalId);
+			}
+			setLastAcceptedProposalId(proposalId);
+			promise = new Promise(true, proposalId, new ArrayList<>(acceptedEntries.tailMap(fromSlot).values()));
+		}
+		awaitDurable(record);
+		return promise;
 	}
 
-	private boolean handleFaults(int proposalId, int key, int value, int requestType) {
+	/**
+	 * Discards the entries of the slots up to the specified one, which the store of this server has
+	 * in a snapshot, and rewrites the write-ahead log without them.
+	 * @param index The slot of the snapshot.
+	 */
+	public synchronized void compact(int index) {
+		if (index <= compactedThrough) {
+			return;
+		}
+		acceptedEntries.headMap(index, true).clear();
+		compactedThrough = index;
+		if (log == null) {
+			return;
+		}
+		try {
+			log.rewrite(lastAcceptedProposalId, acceptedEntries.values());
+		} catch (IOException e) {
+			logger.errSnapshot("Failed to compact the write-ahead log of Server" + serverNumber + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the highest slot this acceptor has accepted an entry for.
+	 * @return The highest accepted slot, including discarded ones, or 0 if nothing was accepted yet.
+	 */
+	public synchronized int getLastAcceptedSlot() {
+		return acceptedEntries.isEmpty() ? compactedThrough : Math.max(compactedThrough, acceptedEntries.lastKey());
+	}
+
+	/**
+	 * Records a heartbeat from the current leader and grants it the leader lease.
+	 * @param leaderNumber The number of the leader server.
+	 * @param proposalId The proposal identifier the leader won the prepare phase with.
+	 * @return True if the leader is recognized, false if a higher proposal has been accepted since.
+	 */
+	public synchronized boolean heartbeat(int leaderNumber, int proposalId) {
+		if (proposalId < lastAcceptedProposalId) {
+			return false;
+		}
+		this.leaderNumber = leaderNumber;
+		this.leaderLeaseExpiry = System.currentTimeMillis() + Constants.LEADER_LEASE_MS;
+		return true;
+	}
+
+	/**
+	 * Returns the number of the leader this acceptor has heard from within the lease.
+	 * @return The leader server number, or 0 if no leader is known.
+	 */
+	public int getLeader() {
+		return System.currentTimeMillis() < leaderLeaseExpiry ? leaderNumber : 0;
+	}
+
+	/**
+	 * Waits until a record of the write-ahead log is on disk, sharing the sync with concurrent requests.
+	 * @param record The sequence number of the record, or 0 if nothing was logged.
+	 * @throws RemoteException If the log cannot be written, so that the request must not be answered.
+	 */
+	private void awaitDurable(long record) throws RemoteException {
+		if (record == 0) {
+			return;
+		}
+		AcceptorLog current = log;
+		if (current == null) {
+			throw new RemoteException("The acceptor of Server" + serverNumber + " is stopped");
+		}
+		try {
+			current.sync(record);
+		} catch (IOException e) {
+			throw new RemoteException("Failed to write the write-ahead log of Server" + serverNumber, e);
+		}
+	}
+
+	private void handleFaults() {
 		try {
 			if (failureCounter % 20 == 0) {
 				logger.errServerDown(serverNumber);
@@ -69,14 +255,6 @@ public class Acceptor extends KVStore implements Runnable {
 		} catch (InterruptedException ie) {
 			// Do nothing if interrupted
 		}
-		if (proposalId < lastAcceptedProposalId) {
-			return false;
-		}
-		if (super.checkReq(key, requestType)) {
-			setLastAcceptedProposalId(proposalId);
-			return true;
-		}
-		return false;
 	}
 
 	/**
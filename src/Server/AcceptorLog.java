@@ -0,0 +1,258 @@
+/**
+ * The AcceptorLog class represents the write-ahead log of the promises and accepted entries of an acceptor.
+ * Records are appended to a buffer and written by whichever thread syncs first, so the records of many
+ * concurrent prepare and accept requests reach the disk with a single fsync (group commit) before any of
+ * them is answered.
+ * Each record is framed as its length, a CRC32 of its body, and the body: a type byte followed by the
+ * proposal identifier and, for an accepted entry, the slot and the encoded batch. A torn record at the
+ * end of the file is discarded when the log is replayed.
+ */
+package Server;
+
+import Compute.BatchCodec;
+import Compute.LogEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+public class AcceptorLog {
+
+	private static final byte PROMISE = 1;
+	private static final byte ACCEPT = 2;
+
+	/** The number of bytes framing each record: its length and its checksum. */
+	private static final int FRAME_BYTES = 2 * Integer.BYTES;
+
+	private final Path file;
+
+	/** The open file of the log. Guarded by syncLock. */
+	private FileChannel channel;
+
+	/** The records appended but not yet written to the file. Guarded by this. */
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+
+	/** The number of records appended so far. Guarded by this. */
+	private long appended;
+
+	/** The number of records known to be on disk. Guarded by syncLock. */
+	private long durable;
+
+	/** The error that made the records of a sync lost, after which nothing can be made durable. Guarded by syncLock. */
+	private IOException failure;
+
+	private final Object syncLock = new Object();
+
+	private AcceptorLog(Path file, FileChannel channel) {
+		this.file = file;
+		this.channel = channel;
+	}
+
+	/**
+	 * Opens the log in the specified file, replaying the records it holds.
+	 * @param file The file of the log.
+	 * @param promises Receives the proposal identifier of each replayed promise.
+	 * @param accepts Receives each replayed accepted entry.
+	 * @return The log, positioned after its last complete record.
+	 * @throws IOException If the file cannot be read or created.
+	 */
+	public static AcceptorLog open(Path file, IntConsumer promises, Consumer<LogEntry> accepts) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long end = replay(channel, promises, accepts);
+		channel.truncate(end);
+		channel.position(end);
+		return new AcceptorLog(file, channel);
+	}
+
+	/**
+	 * Appends a promise not to accept proposals lower than the specified one.
+	 * @param proposalId The promised proposal identifier.
+	 * @return The sequence number of the record, to be passed to sync.
+	 */
+	public synchronized long appendPromise(int proposalId) {
+		return append(encodePromise(proposalId));
+	}
+
+	/**
+	 * Appends an accepted entry.
+	 * @param entry The accepted entry.
+	 * @return The sequence number of the record, to be passed to sync.
+	 */
+	public synchronized long appendAccept(LogEntry entry) {
+		return append(encodeAccept(entry));
+	}
+
+	/**
+	 * Waits until the record with the specified sequence number and every record before it is on disk.
+	 * The first waiting thread writes and syncs everything appended so far while the others queue behind it,
+	 * so the records appended meanwhile go to disk together with the next sync.
+	 * @param sequence The sequence number returned when the record was appended.
+	 * @throws IOException If the log cannot be written, now or by an earlier sync.
+	 */
+	public void sync(long sequence) throws IOException {
+		synchronized (syncLock) {
+			if (durable >= sequence) {
+				return;
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			long target;
+			ByteBuffer records;
+			synchronized (this) {
+				target = appended;
+				records = pending;
+				pending = ByteBuffer.allocate(records.capacity());
+			}
+			records.flip();
+			try {
+				while (records.hasRemaining()) {
+					channel.write(records);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+			durable = target;
+		}
+	}
+
+	/**
+	 * Replaces the log with one holding only the specified promise and entries, discarding every other record.
+	 * The caller must make sure no record is appended meanwhile, and that the promise and entries include
+	 * everything the discarded records still needed to keep.
+	 * @param proposalId The highest proposal identifier promised.
+	 * @param entries The accepted entries to keep.
+	 * @throws IOException If the new log cannot be written; the old one is kept then.
+	 */
+	public void rewrite(int proposalId, Iterable<LogEntry> entries) throws IOException {
+		synchronized (syncLock) {
+			if (failure != null) {
+				throw failure;
+			}
+			ByteBuffer records = frame(ByteBuffer.allocate(64 * 1024), encodePromise(proposalId));
+			for (LogEntry entry : entries) {
+				records = frame(records, encodeAccept(entry));
+			}
+			records.flip();
+			Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+			FileChannel rewritten = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				while (records.hasRemaining()) {
+					rewritten.write(records);
+				}
+				rewritten.force(false);
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				rewritten.close();
+				throw e;
+			}
+			channel.close();
+			channel = rewritten;
+			synchronized (this) {
+				// The records not yet written are covered by the new log.
+				pending.clear();
+				durable = appended;
+			}
+		}
+	}
+
+	/**
+	 * Closes the file of the log.
+	 * @throws IOException If the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static byte[] encodePromise(int proposalId) {
+		ByteBuffer body = ByteBuffer.allocate(1 + Integer.BYTES);
+		body.put(PROMISE).putInt(proposalId);
+		return body.array();
+	}
+
+	private static byte[] encodeAccept(LogEntry entry) {
+		byte[] batch = BatchCodec.encode(entry.getBatch());
+		ByteBuffer body = ByteBuffer.allocate(1 + 2 * Integer.BYTES + batch.length);
+		body.put(ACCEPT).putInt(entry.getProposalId()).putInt(entry.getSlot()).put(batch);
+		return body.array();
+	}
+
+	private long append(byte[] body) {
+		pending = frame(pending, body);
+		return ++appended;
+	}
+
+	/**
+	 * Frames a record into a buffer, growing the buffer if needed.
+	 * @return The buffer holding the record.
+	 */
+	private static ByteBuffer frame(ByteBuffer buffer, byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		int size = FRAME_BYTES + body.length;
+		if (buffer.remaining() < size) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+		buffer.putInt(body.length).putInt((int) crc.getValue()).put(body);
+		return buffer;
+	}
+
+	/**
+	 * Replays the complete records of the file.
+	 * @return The position after the last complete record.
+	 */
+	private static long replay(FileChannel channel, IntConsumer promises, Consumer<LogEntry> accepts) throws IOException {
+		long position = 0;
+		long size = channel.size();
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_BYTES);
+		while (position + FRAME_BYTES <= size) {
+			frame.clear();
+			channel.read(frame, position);
+			frame.flip();
+			int length = frame.getInt();
+			int checksum = frame.getInt();
+			if (length <= 0 || position + FRAME_BYTES + length > size) {
+				break;
+			}
+			ByteBuffer body = ByteBuffer.allocate(length);
+			while (body.hasRemaining() && channel.read(body, position + FRAME_BYTES + body.position()) >= 0) {
+				// Read until the body is complete.
+			}
+			CRC32 crc = new CRC32();
+			crc.update(body.array());
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			body.flip();
+			byte type = body.get();
+			int proposalId = body.getInt();
+			if (type == PROMISE) {
+				promises.accept(proposalId);
+			} else if (type == ACCEPT) {
+				int slot = body.getInt();
+				byte[] batch = new byte[body.remaining()];
+				body.get(batch);
+				accepts.accept(new LogEntry(slot, proposalId, BatchCodec.decodeBatch(batch)));
+			} else {
+				break;
+			}
+			position += FRAME_BYTES + length;
+		}
+		return position;
+	}
+}
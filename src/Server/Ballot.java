@@ -0,0 +1,55 @@
+/**
+ * The Ballot class packs proposal identifiers made of a round and the number of the proposing server.
+ * The round takes the high bits and the server number the low 8 bits, so comparing two packed ints
+ * orders ballots by round first and by server number second, and no two servers ever use the same ballot.
+ * The ballot 0 is lower than every ballot a proposer uses.
+ */
+package Server;
+
+public final class Ballot {
+
+	/** The number of low bits holding the server number. */
+	private static final int SERVER_BITS = 8;
+
+	private Ballot() {
+	}
+
+	/**
+	 * Packs a ballot.
+	 * @param round The round, at least 1.
+	 * @param serverNumber The number of the proposing server, from 1 to 255.
+	 * @return The packed ballot.
+	 */
+	public static int of(int round, int serverNumber) {
+		return round << SERVER_BITS | serverNumber;
+	}
+
+	/**
+	 * Returns the round of a ballot.
+	 * @param ballot The packed ballot.
+	 * @return The round.
+	 */
+	public static int roundOf(int ballot) {
+		return ballot >>> SERVER_BITS;
+	}
+
+	/**
+	 * Returns the number of the server that proposed a ballot.
+	 * @param ballot The packed ballot.
+	 * @return The server number.
+	 */
+	public static int serverOf(int ballot) {
+		return ballot & ((1 << SERVER_BITS) - 1);
+	}
+
+	/**
+	 * Returns the lowest ballot of a server that is higher than the specified one.
+	 * @param highest The highest ballot seen.
+	 * @param serverNumber The number of the proposing server.
+	 * @return The next ballot of the server.
+	 */
+	public static int next(int highest, int serverNumber) {
+		int round = roundOf(highest);
+		return serverOf(highest) < serverNumber ? of(round, serverNumber) : of(round + 1, serverNumber);
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * The Batcher class collects concurrent client operations in front of the Proposer and proposes them
+ * together as the value of a single slot of the log.
+ * A batch is closed once it holds the maximum number of operations, or once its first operation has
+ * waited for the maximum delay. One worker runs per slot of the pipeline window, so operations that
+ * arrive while every slot is busy join the next batch.
+ */
+package Server;
+
+import Compute.Batch;
+import Compute.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class Batcher implements Runnable {
+
+	/** The maximum number of operations in a batch. */
+	private static final int BATCH_SIZE = Integer.getInteger("paxos.batchSize", Constants.BATCH_SIZE);
+
+	/** The maximum time, in nanoseconds, the first operation of a batch waits for others to join. */
+	private static final long BATCH_DELAY_NANOS =
+			TimeUnit.MICROSECONDS.toNanos(Long.getLong("paxos.batchDelayMicros", Constants.BATCH_DELAY_MICROS));
+
+	/** The operations waiting to be proposed. */
+	private final BlockingQueue<PendingOperation> queue = new LinkedBlockingQueue<>();
+
+	/** The proposer the batches are proposed with. */
+	private final Proposer proposer;
+
+	/** The worker threads forming and proposing batches. */
+	private final List<Thread> workers = new ArrayList<>();
+
+	/** Whether the batcher is stopped, after which queued operations are answered with NO_CONSENSUS. */
+	private volatile boolean stopped;
+
+	/**
+	 * Constructs a Batcher object for the specified proposer.
+	 * @param proposer The proposer the batches are proposed with.
+	 */
+	public Batcher(Proposer proposer) {
+		this.proposer = proposer;
+	}
+
+	/**
+	 * Starts one worker per slot of the pipeline window of the proposer.
+	 */
+	public void start() {
+		for (int i = 0; i < proposer.getPipelineWindow(); i++) {
+			Thread worker = new Thread(this, "paxos-batcher-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+	}
+
+	/**
+	 * Stops the workers once the batches they are proposing are decided or given up, and answers the
+	 * operations still queued with NO_CONSENSUS, since no worker will propose them.
+	 */
+	public void stop() {
+		stopped = true;
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		failQueued();
+	}
+
+	/**
+	 * Submits an operation and waits until the batch it joined has been decided and applied.
+	 * @param key The key involved in the operation.
+	 * @param value The value associated with the key.
+	 * @param reqType The type of request (1 for get, 2 for put, 3 for delete).
+	 * @return The response of the operation, see {@link Response}.
+	 */
+	public long submit(int key, int value, int reqType) {
+		return submit(key, value, reqType, true);
+	}
+
+	/**
+	 * Submits an operation and waits until the batch it joined has been decided and applied.
+	 * A batch holding an operation that may not be forwarded is proposed on this server whatever the
+	 * leader hint says, so that an operation forwarded here is never sent back to the server it came from.
+	 * @param key The key involved in the operation.
+	 * @param value The value associated with the key.
+	 * @param reqType The type of request (1 for get, 2 for put, 3 for delete).
+	 * @param mayForward Whether the batch may be forwarded to the server a rejection named as the leader.
+	 * @return The response of the operation, see {@link Response}.
+	 */
+	public long submit(int key, int value, int reqType, boolean mayForward) {
+		PendingOperation operation = new PendingOperation(key, value, reqType, mayForward);
+		queue.add(operation);
+		if (stopped) {
+			// Queued after stop drained the queue
+			failQueued();
+		}
+		try {
+			return operation.response.get();
+		} catch (ExecutionException e) {
+			return Response.of(Response.NO_CONSENSUS, 0);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return Response.of(Response.NO_CONSENSUS, 0);
+		}
+	}
+
+	/**
+	 * Forms batches from the queued operations and proposes them until the thread is interrupted.
+	 */
+	@Override
+	public void run() {
+		List<PendingOperation> operations = new ArrayList<>(BATCH_SIZE);
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				operations.add(queue.take());
+				long deadline = System.nanoTime() + BATCH_DELAY_NANOS;
+				while (operations.size() < BATCH_SIZE) {
+					PendingOperation next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					operations.add(next);
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			if (!operations.isEmpty()) {
+				propose(operations);
+				operations.clear();
+			}
+		}
+	}
+
+	private void propose(List<PendingOperation> operations) {
+		int[] keys = new int[operations.size()];
+		int[] values = new int[operations.size()];
+		int[] actions = new int[operations.size()];
+		boolean mayForward = true;
+		for (int i = 0; i < operations.size(); i++) {
+			keys[i] = operations.get(i).key;
+			values[i] = operations.get(i).value;
+			actions[i] = operations.get(i).reqType;
+			mayForward &= operations.get(i).mayForward;
+		}
+		try {
+			long[] responses = proposer.propose(new Batch(keys, values, actions), mayForward);
+			for (int i = 0; i < operations.size(); i++) {
+				operations.get(i).response.complete(responses[i]);
+			}
+		} catch (RuntimeException e) {
+			for (PendingOperation operation : operations) {
+				operation.response.completeExceptionally(e);
+			}
+		}
+	}
+
+	private void failQueued() {
+		PendingOperation operation;
+		while ((operation = queue.poll()) != null) {
+			operation.response.complete(Response.of(Response.NO_CONSENSUS, 0));
+		}
+	}
+
+	/** A client operation waiting for its batch to be decided. */
+	private static class PendingOperation {
+
+		private final int key;
+		private final int value;
+		private final int reqType;
+		private final boolean mayForward;
+		private final CompletableFuture<Long> response = new CompletableFuture<>();
+
+		PendingOperation(int key, int value, int reqType, boolean mayForward) {
+			this.key = key;
+			this.value = value;
+			this.reqType = reqType;
+			this.mayForward = mayForward;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * The CatchUp class brings a lagging learner up to date with the log.
+ * It checks periodically whether the learner knows of decided slots it has not applied, and whether it
+ * has stopped making progress on them, for example after missing commits while it was down. It then fetches
+ * the missing entries in bulk from another server, or a snapshot in chunks if that server has discarded them.
+ * Followers are asked before the leader, so that catching up stays off the leader's path whenever possible.
+ */
+package Server;
+
+import Compute.BatchCodec;
+import Compute.LogChunk;
+import Compute.LogEntry;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CatchUp implements Runnable {
+
+	/** The interval, in milliseconds, at which the learner is checked. */
+	private static final long CATCH_UP_INTERVAL_MS = Long.getLong("paxos.catchUpIntervalMs", Constants.CATCH_UP_INTERVAL_MS);
+
+	/** The logger instance for logging messages. */
+	private final Logger logger = new Logger();
+
+	/** The connections to the other servers, kept apart from those of the proposer. */
+	private final PeerConnectionManager peers;
+
+	private final Learner learner;
+	private final Acceptor acceptor;
+	private final int serverNumber;
+
+	/**
+	 * Constructs a CatchUp object for the learner of a server.
+	 * @param serverNumber The number of the server.
+	 * @param learner The learner to bring up to date.
+	 * @param acceptor The acceptor of the server, which knows the current leader.
+	 */
+	public CatchUp(int serverNumber, Learner learner, Acceptor acceptor) {
+		this(serverNumber, learner, acceptor, new PeerConnectionManager(ServerStoreUtil.getServerMap()));
+	}
+
+	/**
+	 * Constructs a CatchUp object for the learner of a server, fetching from the specified servers.
+	 * @param serverNumber The number of the server.
+	 * @param learner The learner to bring up to date.
+	 * @param acceptor The acceptor of the server, which knows the current leader.
+	 * @param peers The connections to the servers.
+	 */
+	public CatchUp(int serverNumber, Learner learner, Acceptor acceptor, PeerConnectionManager peers) {
+		this.serverNumber = serverNumber;
+		this.peers = peers;
+		this.learner = learner;
+		this.acceptor = acceptor;
+	}
+
+	@Override
+	public void run() {
+		int appliedBefore = learner.getLastApplied();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(CATCH_UP_INTERVAL_MS);
+			} catch (InterruptedException ie) {
+				return;
+			}
+			int applied = learner.getLastApplied();
+			// Slots still being committed normally make progress between two checks
+			if (learner.getHighestKnownSlot() > applied && applied == appliedBefore) {
+				catchUp();
+			}
+			appliedBefore = learner.getLastApplied();
+		}
+	}
+
+	/**
+	 * Catches up from the first server that is ahead of this one.
+	 */
+	private void catchUp() {
+		int from = learner.getLastApplied();
+		for (String name : peerOrder()) {
+			try {
+				if (catchUpFrom(name)) {
+					logger.paxosLog("Caught up from " + name + " (slot " + from + " to " + learner.getLastApplied() + ").");
+					return;
+				}
+			} catch (RemoteException | SocketTimeoutException e) {
+				// Try the next server
+			} catch (IOException e) {
+				logger.errSnapshot("Failed to fetch a snapshot from " + name + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Returns the other servers, the current leader last.
+	 */
+	private List<String> peerOrder() {
+		String self = ServerStoreUtil.getServerName(serverNumber);
+		int leader = acceptor.getLeader();
+		String leaderName = leader == 0 ? null : ServerStoreUtil.getServerName(leader);
+		List<String> names = new ArrayList<>();
+		for (String name : peers.getPeerNames()) {
+			if (!name.equals(self) && !name.equals(leaderName)) {
+				names.add(name);
+			}
+		}
+		if (leaderName != null && !leaderName.equals(self)) {
+			names.add(leaderName);
+		}
+		return names;
+	}
+
+	/**
+	 * Fetches and applies log entries from a server until it has no more, switching to its snapshot
+	 * if it has discarded the entries this learner needs.
+	 * @return True if this learner made progress, false if the server is not ahead of it.
+	 */
+	private boolean catchUpFrom(String name) throws IOException {
+		boolean progress = false;
+		while (true) {
+			int fromSlot = learner.getLastApplied() + 1;
+			LogChunk chunk = BatchCodec.decodeLogChunk(peers.call(name, stub -> stub.fetchLog(fromSlot, Constants.CATCH_UP_BATCH)));
+			if (chunk.getEntries().isEmpty()) {
+				if (chunk.getLastApplied() < fromSlot) {
+					return progress;
+				}
+				if (!fetchSnapshot(name)) {
+					return progress;
+				}
+				progress = true;
+				continue;
+			}
+			for (LogEntry entry : chunk.getEntries()) {
+				learner.commit(entry.getSlot(), entry.getBatch());
+			}
+			progress = true;
+			if (chunk.getEntries().size() < Constants.CATCH_UP_BATCH) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Fetches the last snapshot of a server in chunks and installs it.
+	 * @return True if the snapshot was installed, false if it changed meanwhile or is not ahead.
+	 */
+	private boolean fetchSnapshot(String name) throws IOException {
+		Path file = learner.getStore().getDataDirectory().resolve("snapshot.fetch");
+		int index = 0;
+		long offset = 0;
+		long size = -1;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (size < 0 || offset < size) {
+				int chunkIndex = index;
+				long chunkOffset = offset;
+				byte[] chunk = peers.call(name, stub -> stub.fetchSnapshot(chunkIndex, chunkOffset, Constants.SNAPSHOT_CHUNK_BYTES));
+				if (chunk.length == 0) {
+					return false;
+				}
+				if (offset == 0) {
+					ByteBuffer header = ByteBuffer.wrap(chunk);
+					index = header.getInt(Integer.BYTES);
+					size = 3L * Integer.BYTES + 8L * header.getInt(2 * Integer.BYTES) + Integer.BYTES;
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(chunk);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				offset += chunk.length;
+			}
+			channel.force(false);
+		}
+		logger.paxosLog("Fetched the snapshot as of slot " + index + " from " + name + ".");
+		return learner.installSnapshot(file);
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * The CommitTracker class limits the number of calls a proposer has in flight to each server, such as
+ * the commits it sends without waiting for them, so that a slow or unreachable server does not pile up
+ * calls and the threads making them. A call beyond the limit is not made: a learner skipped that way
+ * learns the missing slots by catching up, and a server skipped in a phase counts as not replying.
+ */
+package Server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CommitTracker {
+
+	/** The maximum number of calls in flight to one server. */
+	private final int maxInFlight;
+
+	/** The number of calls in flight to each server. */
+	private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a CommitTracker object.
+	 * @param maxInFlight The maximum number of calls in flight to one server.
+	 */
+	public CommitTracker(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Reserves the sending of a call to a server.
+	 * @param name The name of the server.
+	 * @return True if the call may be sent, false if the server has too many calls in flight.
+	 */
+	public boolean trySend(String name) {
+		AtomicInteger count = inFlight.computeIfAbsent(name, n -> new AtomicInteger());
+		if (count.incrementAndGet() > maxInFlight) {
+			count.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Records that a call sent to a server was answered or failed.
+	 * @param name The name of the server.
+	 */
+	public void finished(String name) {
+		inFlight.get(name).decrementAndGet();
+	}
+}
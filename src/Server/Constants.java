@@ -35,7 +35,79 @@ public interface Constants {
 	/** The port number for Server5. */
 	int SERVER5_PORT_NO = 7005;
 
+	/** The default transport between clients and servers: "rmi", or "nio" for the multiplexed NIO transport. */
+	String TRANSPORT = "rmi";
+
+	/** The offset from the RMI port of a server to the port it serves the NIO transport on. */
+	int NIO_PORT_OFFSET = 100;
+
+	/** The default number of NIO worker threads running client calls, which wait for consensus. */
+	int NIO_CLIENT_WORKERS = 256;
+
+	/** The default number of NIO worker threads running the calls between servers, which never wait for consensus. */
+	int NIO_PEER_WORKERS = 32;
+
 	/** The total number of servers. */
 	int NUMBER_OF_SERVERS = 5;
 
+	/** The maximum time, in milliseconds, a phase waits for replies from the servers. */
+	long PHASE_TIMEOUT_MS = 5000;
+
+	/** The default time, in milliseconds, an RMI call to another server waits for its reply, as set by -Dsun.rmi.transport.tcp.responseTimeout. */
+	long RMI_RESPONSE_TIMEOUT_MS = 30000;
+
+	/** The initial time, in milliseconds, to wait before reconnecting to an unreachable server. */
+	long PEER_RETRY_BACKOFF_MS = 50;
+
+	/** The maximum time, in milliseconds, to wait before reconnecting to an unreachable server. */
+	long PEER_MAX_BACKOFF_MS = 2000;
+
+	/** The time, in milliseconds, a leader keeps its leadership after a successful round with a majority. */
+	long LEADER_LEASE_MS = 2000;
+
+	/** The interval, in milliseconds, at which a leader sends heartbeats to renew its lease. */
+	long LEADER_HEARTBEAT_MS = 500;
+
+	/** The time, in milliseconds, a leader stops serving local reads before its lease ends, to allow for clock drift. */
+	long LEASE_READ_MARGIN_MS = 100;
+
+	/** The maximum time, in milliseconds, a stale read waits for the replica to reach the requested index. */
+	long STALE_READ_WAIT_MS = 1000;
+
+	/** The default number of times a proposer tries to get a batch decided before giving up. */
+	int MAX_PROPOSE_ATTEMPTS = 5;
+
+	/** The initial upper bound, in milliseconds, of the random delay before a proposer tries again. */
+	long PROPOSE_BACKOFF_MS = 5;
+
+	/** The maximum upper bound, in milliseconds, of the random delay before a proposer tries again. */
+	long PROPOSE_MAX_BACKOFF_MS = 200;
+
+	/** The default number of slots a proposer may have in its accept phase at the same time. */
+	int PIPELINE_WINDOW = 16;
+
+	/** The default maximum number of client operations proposed together in one slot. */
+	int BATCH_SIZE = 64;
+
+	/** The maximum number of operations a client may submit together in one batch. */
+	int MAX_SUBMITTED_BATCH_SIZE = 4096;
+
+	/** The default maximum time, in microseconds, an operation waits for others to join its batch. */
+	long BATCH_DELAY_MICROS = 200;
+
+	/** The default number of applied slots after which the learner takes a new snapshot of the store. */
+	int SNAPSHOT_INTERVAL = 1000;
+
+	/** The number of applied slots a learner keeps for replicas catching up, beyond which the slots a snapshot covers are discarded. */
+	int MAX_RETAINED_SLOTS = 10000;
+
+	/** The interval, in milliseconds, at which a replica checks whether it lags behind the log. */
+	long CATCH_UP_INTERVAL_MS = 200;
+
+	/** The maximum number of log entries fetched at once by a replica catching up. */
+	int CATCH_UP_BATCH = 256;
+
+	/** The maximum number of bytes of a snapshot fetched at once by a replica catching up. */
+	int SNAPSHOT_CHUNK_BYTES = 1 << 20;
+
 }
@@ -1,74 +1,274 @@
 /**
  * The IKVStoreServer class represents a server implementation of the IKVStore interface.
- * It acts as a coordinator between the Proposer, Learner, and Acceptor components.
+ * It acts as a coordinator between the Proposer, Learner, and Acceptor components,
+ * which share the one KVStore of the server.
  */
 package Server;
 
+import Compute.Batch;
+import Compute.BatchCodec;
+import Compute.BatchResult;
 import Compute.IKVStore;
+import Compute.Response;
+import Compute.Result;
 
+import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.nio.BufferUnderflowException;
+import java.nio.file.Path;
+import java.rmi.ConnectException;
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Map;
 
 public class IKVStoreServer implements IKVStore {
 
+	private KVStore store;
 	private Proposer proposer;
 	private Learner learner;
 	private Acceptor acceptor;
+	private Batcher batcher;
+	private Thread heartbeat;
+	private Thread catchUp;
+	private int serverNumber;
+
+	static {
+		// Without it an RMI call to a hung server never returns, holding its thread for good
+		if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+			System.setProperty("sun.rmi.transport.tcp.responseTimeout", String.valueOf(Constants.RMI_RESPONSE_TIMEOUT_MS));
+		}
+	}
 
 	/**
-	 * Constructs an IKVStoreServer object with the specified server number.
+	 * Constructs an IKVStoreServer object with the specified server number, for the servers of the properties file.
 	 * @param serverNumber The number of the server.
 	 */
 	public IKVStoreServer(int serverNumber) {
-		proposer = new Proposer();
-		learner = new Learner();
-		acceptor = new Acceptor();
+		this(serverNumber, ServerStoreUtil.getServerMap(), ServerStoreUtil::lookup,
+				KVStore.dataDirectoryOf(ServerStoreUtil.getServerName(serverNumber)));
+	}
+
+	/**
+	 * Constructs an IKVStoreServer object that reaches the other servers through the specified lookup,
+	 * such as an in-memory transport running several servers in one process.
+	 * @param serverNumber The number of the server.
+	 * @param serverMap The host of each server of the cluster, including this one, by server name.
+	 * @param lookup The lookup resolving the stub of a server.
+	 * @param dataDirectory The directory holding the files of this server.
+	 */
+	public IKVStoreServer(int serverNumber, Map<String, String> serverMap, PeerConnectionManager.Lookup lookup, Path dataDirectory) {
+		store = new KVStore(dataDirectory);
+		proposer = new Proposer(new PeerConnectionManager(serverMap, lookup));
+		learner = new Learner(store);
+		acceptor = new Acceptor(store.getDataDirectory());
 		proposer.start();
 		learner.start();
 		acceptor.start();
 		acceptor.setServerNumber(serverNumber);
+		acceptor.compact(learner.getSnapshotIndex());
+		learner.setSnapshotListener(acceptor::compact);
+		proposer.advanceProposalId(acceptor.getLastAcceptedProposalId());
+		proposer.setServerNumber(serverNumber);
+		proposer.setLearner(learner);
+		this.serverNumber = serverNumber;
+
+		batcher = new Batcher(proposer);
+		batcher.start();
+
+		heartbeat = new Thread(proposer, "paxos-leader-heartbeat");
+		heartbeat.setDaemon(true);
+		heartbeat.start();
+
+		catchUp = new Thread(new CatchUp(serverNumber, learner, acceptor, new PeerConnectionManager(serverMap, lookup)), "paxos-catch-up");
+		catchUp.setDaemon(true);
+		catchUp.start();
+	}
+
+	/**
+	 * Stops the background threads of this server and closes its write-ahead log.
+	 * Calls still running are answered or fail, and later ones fail.
+	 */
+	public void shutdown() {
+		heartbeat.interrupt();
+		catchUp.interrupt();
+		batcher.stop();
+		acceptor.stop();
 	}
 
 	/**
 	 * Retrieves the value associated with the specified key.
+	 * The leader answers from its local store while it holds the leader lease. Other servers wait until
+	 * they have applied the read index reported by a majority and then answer locally. Only if neither
+	 * is possible does the read go through consensus.
 	 * @param key The key to retrieve the value for.
 	 * @return The value associated with the key.
 	 */
-	public String get(int key) {
-		return proposer.propose(key, Integer.MIN_VALUE, 1);
+	public long get(int key) {
+		if (proposer.holdsReadLease()) {
+			return learner.read(key);
+		}
+		int readIndex = proposer.readIndex();
+		if (readIndex >= 0 && learner.awaitApplied(readIndex, Constants.PHASE_TIMEOUT_MS)) {
+			return learner.read(key);
+		}
+		return route(key, Integer.MIN_VALUE, 1);
 	}
 
 	/**
 	 * Associates the specified value with the specified key in the key-value store.
 	 * @param key The key to associate the value with.
 	 * @param value The value to be associated with the key.
-	 * @return A message indicating the success or failure of the operation.
+	 * @return The response of the operation, see {@link Compute.Response}.
 	 */
-	public String put(int key, int value) {
-		return proposer.propose(key, value, 2);
+	public long put(int key, int value) {
+		return route(key, value, 2);
 	}
 
 	/**
 	 * Deletes the key-value pair associated with the specified key.
 	 * @param key The key of the pair to be deleted.
-	 * @return A message indicating the success or failure of the operation.
+	 * @return The response of the operation, see {@link Compute.Response}.
+	 */
+	public long delete(int key) {
+		return route(key, Integer.MIN_VALUE, 3);
+	}
+
+	/**
+	 * Forwards an operation to the current leader, or proposes it here if this server is the leader,
+	 * no leader is known, or the operation could not be sent to the leader.
+	 * If the operation was sent but its reply did not come back, the leader may have applied it,
+	 * so it is not proposed again and the response is NO_CONSENSUS.
 	 */
-	public String delete(int key) {
-		return proposer.propose(key, Integer.MIN_VALUE, 3);
+	private long route(int key, int value, int action) {
+		int leader = acceptor.getLeader();
+		if (leader != 0 && leader != serverNumber && !proposer.isLeader()) {
+			try {
+				return proposer.forward(leader, key, value, action).getResponse();
+			} catch (ConnectException e) {
+				// The operation never reached the leader, so it is proposed here instead
+			} catch (RemoteException | SocketTimeoutException e) {
+				// The leader may have applied the operation, so proposing it here could apply it twice
+				return Response.of(Response.NO_CONSENSUS, 0);
+			}
+		}
+		return batcher.submit(key, value, action);
+	}
+
+	@Override
+	public Result staleGet(int key, int minIndex, long maxStalenessMillis) {
+		if (learner.awaitApplied(minIndex, Constants.STALE_READ_WAIT_MS)) {
+			Result result = learner.readWithIndex(key);
+			if (result.getStalenessMillis() <= maxStalenessMillis) {
+				return result;
+			}
+		}
+		// a linearizable read reflects every acknowledged operation, including the one at minIndex
+		long response = get(key);
+		return new Result(response, Math.max(minIndex, learner.getLastApplied()), 0);
+	}
+
+	@Override
+	public int appliedIndex() {
+		return Math.max(learner.getLastApplied(), proposer.getForwardedIndex());
+	}
+
+	@Override
+	public long[] submitBatch(byte[] batch) throws RemoteException {
+		// Any identifier set by the client is dropped, so that it cannot pass for the batch of a proposer
+		Batch operations = decodeSubmittedBatch(batch).withId(0);
+		int leader = acceptor.getLeader();
+		if (leader != 0 && leader != serverNumber && !proposer.isLeader()) {
+			try {
+				return proposer.forwardBatch(leader, BatchCodec.encode(operations));
+			} catch (ConnectException e) {
+				// The batch never reached the leader, so it is proposed here instead
+			} catch (RemoteException | SocketTimeoutException e) {
+				// The leader may have applied the batch, so proposing it here could apply it twice
+				long[] responses = new long[operations.size()];
+				Arrays.fill(responses, Response.of(Response.NO_CONSENSUS, 0));
+				return responses;
+			}
+		}
+		return proposer.propose(operations);
+	}
+
+	/**
+	 * Decodes a batch submitted by a client and checks that it can be proposed.
+	 * @throws IllegalArgumentException If the batch is malformed, empty, too large, or holds an unknown action.
+	 */
+	private static Batch decodeSubmittedBatch(byte[] frame) {
+		Batch batch;
+		try {
+			// The size is checked before the operations are allocated
+			batch = BatchCodec.decodeBatch(frame, Constants.MAX_SUBMITTED_BATCH_SIZE);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Malformed batch: " + e);
+		}
+		if (batch.size() == 0) {
+			throw new IllegalArgumentException("A batch must hold at least one operation.");
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			int action = batch.getAction(i);
+			if (action < 1 || action > 3) {
+				throw new IllegalArgumentException("Unknown action " + action + " for operation " + i
+						+ " of the batch; expected 1 (get), 2 (put) or 3 (delete).");
+			}
+		}
+		return batch;
+	}
+
+	@Override
+	public byte[] prepareBatch(int serverNumber, int proposalId, int fromSlot) throws RemoteException, SocketTimeoutException {
+		return BatchCodec.encode(acceptor.prepare(serverNumber, proposalId, fromSlot));
+	}
+
+	@Override
+	public int acceptBatch(int proposalId, int slot, byte[] batch) throws RemoteException, SocketTimeoutException {
+		return acceptor.accept(proposalId, slot, BatchCodec.decodeBatch(batch));
+	}
+
+	@Override
+	public long[] commitBatch(int slot, byte[] batch) throws RemoteException, SocketTimeoutException {
+		return learner.commit(slot, BatchCodec.decodeBatch(batch));
+	}
+
+	@Override
+	public Result propose(int key, int value, int action) throws RemoteException {
+		long response = batcher.submit(key, value, action, false);
+		return new Result(response, learner.getLastApplied(), 0);
+	}
+
+	@Override
+	public BatchResult proposeBatch(byte[] batch) throws RemoteException {
+		long[] responses = proposer.propose(BatchCodec.decodeBatch(batch), false);
+		return new BatchResult(responses, learner.getLastApplied());
+	}
+
+	@Override
+	public boolean heartbeat(int serverNumber, int proposalId, int commitIndex) throws RemoteException {
+		if (!acceptor.heartbeat(serverNumber, proposalId)) {
+			return false;
+		}
+		learner.observeCommitIndex(commitIndex, System.currentTimeMillis());
+		return true;
 	}
 
 	@Override
-	public boolean prepare(int proposalId, int key, int value, int action) throws RemoteException, SocketTimeoutException {
-		return acceptor.prepare(proposalId, key, value, action);
+	public int readIndex() throws RemoteException {
+		return acceptor.getLastAcceptedSlot();
 	}
 
 	@Override
-	public boolean accept(int proposalId, int key, int value, int action) throws RemoteException, SocketTimeoutException {
-		return acceptor.accept(proposalId, key, value, action);
+	public byte[] fetchLog(int fromSlot, int maxEntries) throws RemoteException {
+		return BatchCodec.encode(learner.fetchLog(fromSlot, maxEntries));
 	}
 
 	@Override
-	public String commit(int key, int value, int action) throws RemoteException, SocketTimeoutException {
-		return learner.commit(key, value, action);
+	public byte[] fetchSnapshot(int index, long offset, int length) throws RemoteException {
+		try {
+			return learner.fetchSnapshot(index, offset, length);
+		} catch (IOException e) {
+			throw new RemoteException("Failed to read the snapshot of Server" + serverNumber, e);
+		}
 	}
 }
@@ -0,0 +1,185 @@
+/**
+ * The IntIntMap class represents a map from int keys to int values that stores both in primitive arrays.
+ * It uses open addressing with linear probing, so an entry costs two array slots instead of a boxed key,
+ * a boxed value and a node. Removal shifts the following entries of the probe sequence back instead of
+ * leaving tombstones, so lookups never slow down after many deletes.
+ * The map is not thread-safe.
+ */
+package Server;
+
+import java.util.Arrays;
+
+public class IntIntMap implements IntIntStore {
+
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int shift;
+	private int size;
+	private int resizeThreshold;
+	private boolean hasFreeKey;
+	private int freeKeyValue;
+
+	/**
+	 * Constructs an empty IntIntMap.
+	 */
+	public IntIntMap() {
+		this(16);
+	}
+
+	/**
+	 * Constructs an empty IntIntMap able to hold the specified number of entries without resizing.
+	 * @param expectedSize The number of entries expected.
+	 */
+	public IntIntMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(2, (int) Math.ceil(expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	@Override
+	public int get(int key) {
+		if (key == FREE_KEY) {
+			return hasFreeKey ? freeKeyValue : NO_VALUE;
+		}
+		int index = indexOf(key);
+		return index < 0 ? NO_VALUE : values[index];
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		return key == FREE_KEY ? hasFreeKey : indexOf(key) >= 0;
+	}
+
+	@Override
+	public boolean putIfAbsent(int key, int value) {
+		if (key == FREE_KEY) {
+			if (hasFreeKey) {
+				return false;
+			}
+			hasFreeKey = true;
+			freeKeyValue = value;
+			size++;
+			return true;
+		}
+		int index = slotOf(key);
+		while (keys[index] != FREE_KEY) {
+			if (keys[index] == key) {
+				return false;
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		values[index] = value;
+		if (++size > resizeThreshold) {
+			rehash(keys.length << 1);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(int key) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey) {
+				return false;
+			}
+			hasFreeKey = false;
+			size--;
+			return true;
+		}
+		int index = indexOf(key);
+		if (index < 0) {
+			return false;
+		}
+		shiftBack(index);
+		size--;
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, FREE_KEY);
+		hasFreeKey = false;
+		size = 0;
+	}
+
+	@Override
+	public void forEach(EntryVisitor visitor) {
+		if (hasFreeKey) {
+			visitor.visit(FREE_KEY, freeKeyValue);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE_KEY) {
+				visitor.visit(keys[i], values[i]);
+			}
+		}
+	}
+
+	private int slotOf(int key) {
+		return (key * HASH_MULTIPLIER) >>> shift;
+	}
+
+	private int indexOf(int key) {
+		int index = slotOf(key);
+		while (keys[index] != FREE_KEY) {
+			if (keys[index] == key) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees a slot and moves back every following entry of the probe sequence whose home slot
+	 * is not between the freed slot and its current slot, so that no lookup stops early.
+	 */
+	private void shiftBack(int freed) {
+		int current = freed;
+		while (true) {
+			current = (current + 1) & mask;
+			int key = keys[current];
+			if (key == FREE_KEY) {
+				break;
+			}
+			int home = slotOf(key);
+			boolean staysInPlace = freed <= current
+					? freed < home && home <= current
+					: freed < home || home <= current;
+			if (!staysInPlace) {
+				keys[freed] = key;
+				values[freed] = values[current];
+				freed = current;
+			}
+		}
+		keys[freed] = FREE_KEY;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE_KEY) {
+				int index = slotOf(oldKeys[i]);
+				while (keys[index] != FREE_KEY) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = oldKeys[i];
+				values[index] = oldValues[i];
+			}
+		}
+	}
+}
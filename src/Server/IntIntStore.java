@@ -0,0 +1,80 @@
+/**
+ * The IntIntStore interface represents a map from int keys to int values used as one segment of the KVStore.
+ * Implementations use open addressing with linear probing, so they share the hashing constants below.
+ * Implementations are not thread-safe; KVStore locks each segment.
+ */
+package Server;
+
+public interface IntIntStore {
+
+	/** The value returned for a key that is not in the store. */
+	int NO_VALUE = Integer.MIN_VALUE;
+
+	/** The key marking a free slot of the table; the entry of this key is kept outside of the table. */
+	int FREE_KEY = 0;
+
+	/** The multiplier used to spread the bits of a key over the table (the golden ratio). */
+	int HASH_MULTIPLIER = 0x9E3779B9;
+
+	/** The share of the table that may be filled before it is doubled. */
+	float LOAD_FACTOR = 0.5f;
+
+	/**
+	 * Returns the value of a key.
+	 * @param key The key.
+	 * @return The value, or NO_VALUE if the key is absent. A stored NO_VALUE is told apart with containsKey.
+	 */
+	int get(int key);
+
+	/**
+	 * Checks whether a key is in the store.
+	 * @param key The key.
+	 * @return True if the key is present, false otherwise.
+	 */
+	boolean containsKey(int key);
+
+	/**
+	 * Associates a value with a key, unless the key is already present.
+	 * @param key The key.
+	 * @param value The value.
+	 * @return True if the entry was added, false if the key was already present.
+	 */
+	boolean putIfAbsent(int key, int value);
+
+	/**
+	 * Removes a key from the store.
+	 * @param key The key.
+	 * @return True if the key was removed, false if it was absent.
+	 */
+	boolean remove(int key);
+
+	/**
+	 * Returns the number of entries in the store.
+	 * @return The number of entries.
+	 */
+	int size();
+
+	/**
+	 * Removes all entries from the store.
+	 */
+	void clear();
+
+	/**
+	 * Passes every entry of the store to a visitor, in no particular order.
+	 * @param visitor The visitor.
+	 */
+	void forEach(EntryVisitor visitor);
+
+	/**
+	 * The EntryVisitor interface receives the entries of a store without boxing them.
+	 */
+	interface EntryVisitor {
+
+		/**
+		 * Receives one entry.
+		 * @param key The key.
+		 * @param value The value.
+		 */
+		void visit(int key, int value);
+	}
+}
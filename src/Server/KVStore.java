@@ -1,56 +1,189 @@
 /**
  * The KVStore class represents a simple key-value store.
+ * The keys are spread over independently locked segments, so that reads from many RMI threads run
+ * in parallel and each write is atomic for its key without serializing the whole store.
+ * The segments are kept on the heap by default. With -Dpaxos.store.engine=direct they are kept in direct
+ * buffers outside of the heap, and with -Dpaxos.store.engine=mapped in files mapped into memory under
+ * -Dpaxos.store.dir, so that the store survives a restart of the server. The mapped engine also records
+ * the last slot fully applied to its files, from which the log is replayed on start; if the server
+ * stopped in the middle of a slot, the files are discarded and the store is restored from the snapshot.
+ * While a snapshot is being taken, a write copies its segment into the snapshot before changing it,
+ * so the snapshot sees the store as it was when the snapshot began.
+ * Each server owns one store, shared by its roles, so that several servers can run in one process.
  */
 package Server;
 
-import java.util.HashMap;
+import Compute.Response;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
 
 public class KVStore {
 
-	/** The map storing key-value pairs. */
-	private static HashMap<Integer, Integer> keyValueMap;
+	/** The number of independently locked segments of the store; a power of two. */
+	private static final int SEGMENTS = 64;
+
+	/** The engine storing the segments: heap, direct or mapped. */
+	private static final String ENGINE = System.getProperty("paxos.store.engine", "heap");
+
+	/** The directory holding the data directories of the servers. */
+	private static final String STORE_DIR = System.getProperty("paxos.store.dir", "data");
+
+	/** The segments storing key-value pairs, without boxing keys or values. */
+	private final IntIntStore[] segments = new IntIntStore[SEGMENTS];
+
+	/** The directory holding the files of this server, such as the segments when the mapped engine is used. */
+	private final Path dataDirectory;
+
+	/** The last slot fully applied to the mapped segments, or UNKNOWN_INDEX; null for the other engines. */
+	private final ByteBuffer appliedIndex;
+
+	/** The applied index recorded while the segments are being changed, and before any slot is recorded. */
+	private static final int UNKNOWN_INDEX = -1;
+
+	/** The lock of each segment: reads share it, writes hold it exclusively. */
+	private final StampedLock[] locks = new StampedLock[SEGMENTS];
+
+	/** The snapshot being taken, or null. */
+	private volatile Snapshot activeSnapshot;
 
 	/** The logger instance for logging messages. */
 	private final Logger logger = new Logger();
 
 	/**
 	 * Constructs a KVStore object and initializes the key-value map.
+	 * The mapped engine reopens the files of the data directory instead of starting empty.
+	 * @param dataDirectory The directory holding the files of the server owning the store.
+	 * @throws UncheckedIOException If the files of the mapped engine cannot be created or mapped.
+	 */
+	public KVStore(Path dataDirectory) {
+		this.dataDirectory = dataDirectory;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = newSegment(i);
+			locks[i] = new StampedLock();
+		}
+		appliedIndex = ENGINE.equals("mapped") ? mapAppliedIndex(dataDirectory.resolve("applied.map")) : null;
+	}
+
+	/**
+	 * Maps the file recording the last slot applied to the mapped segments. A new file records no slot,
+	 * so that segments kept from before the file existed are not trusted.
+	 */
+	private static ByteBuffer mapAppliedIndex(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			boolean created = channel.size() < Integer.BYTES;
+			// The mapping stays valid after the channel is closed.
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Integer.BYTES);
+			if (created) {
+				mapped.putInt(0, UNKNOWN_INDEX);
+			}
+			return mapped;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to map " + file, e);
+		}
+	}
+
+	/**
+	 * Returns the data directory of a server under -Dpaxos.store.dir.
+	 * @param serverName The name of the server.
+	 * @return The data directory.
 	 */
-	public KVStore() {
-		keyValueMap = new HashMap<>();
+	public static Path dataDirectoryOf(String serverName) {
+		return Paths.get(STORE_DIR, serverName);
+	}
+
+	/**
+	 * Returns the directory holding the files of the server owning this store.
+	 * @return The data directory.
+	 */
+	public Path getDataDirectory() {
+		return dataDirectory;
+	}
+
+	/**
+	 * Creates a segment of the configured engine.
+	 * @param segment The number of the segment.
+	 * @return The segment.
+	 * @throws IllegalArgumentException If the configured engine is unknown.
+	 */
+	private IntIntStore newSegment(int segment) {
+		switch (ENGINE) {
+			case "heap": return new IntIntMap();
+			case "direct": return OffHeapIntIntMap.direct();
+			case "mapped": return OffHeapIntIntMap.mapped(dataDirectory.resolve("segment-" + segment + ".map"));
+			default: throw new IllegalArgumentException("Unknown store engine: " + ENGINE);
+		}
 	}
 
 	/**
 	 * Puts a key-value pair into the store.
 	 * @param key The key.
 	 * @param value The value.
-	 * @return A message indicating the success or failure of the put operation.
+	 * @return The response of the put operation, STORED or EXISTS with the value.
 	 */
-	public String putKey(int key, int value) {
-		String response = keyValueMap.containsKey(key) ? logger.errPut(key, value) : logger.ackPut(key, value);
-		System.out.println(response);
-		return keyValueMap.putIfAbsent(key, value) == null ? response : logger.errPut(key, value);
+	public long putKey(int key, int value) {
+		int segment = segmentOf(key);
+		boolean added;
+		long stamp = locks[segment].writeLock();
+		try {
+			preserve(segment);
+			added = segments[segment].putIfAbsent(key, value);
+		} finally {
+			locks[segment].unlockWrite(stamp);
+		}
+		long response = Response.of(added ? Response.STORED : Response.EXISTS, value);
+		System.out.println(logger.formatResponse(key, response));
+		return response;
 	}
 
 	/**
 	 * Retrieves the value associated with a key from the store.
 	 * @param key The key.
-	 * @return A message indicating the success or failure of the get operation.
+	 * @return The response of the get operation, FOUND with the value or NOT_FOUND.
 	 */
-	public String getKey(int key) {
-		String response = keyValueMap.containsKey(key) ? logger.ackGet(key, keyValueMap.get(key)) : logger.errGet();
-		System.out.println(response);
+	public long getKey(int key) {
+		int segment = segmentOf(key);
+		int value;
+		boolean found;
+		long stamp = locks[segment].readLock();
+		try {
+			value = segments[segment].get(key);
+			found = value != IntIntStore.NO_VALUE || segments[segment].containsKey(key);
+		} finally {
+			locks[segment].unlockRead(stamp);
+		}
+		long response = found ? Response.of(Response.FOUND, value) : Response.of(Response.NOT_FOUND, 0);
+		System.out.println(logger.formatResponse(key, response));
 		return response;
 	}
 
 	/**
 	 * Deletes a key-value pair from the store.
 	 * @param key The key.
-	 * @return A message indicating the success or failure of the delete operation.
+	 * @return The response of the delete operation, REMOVED with the value or NOT_FOUND.
 	 */
-	public String deleteKey(int key) {
-		String response = keyValueMap.containsKey(key) ? logger.ackDel(key, keyValueMap.remove(key)) : logger.errDel(key);
-		System.out.println(response);
+	public long deleteKey(int key) {
+		int segment = segmentOf(key);
+		int value;
+		boolean removed;
+		long stamp = locks[segment].writeLock();
+		try {
+			preserve(segment);
+			value = segments[segment].get(key);
+			removed = segments[segment].remove(key);
+		} finally {
+			locks[segment].unlockWrite(stamp);
+		}
+		long response = removed ? Response.of(Response.REMOVED, value) : Response.of(Response.NOT_FOUND, 0);
+		System.out.println(logger.formatResponse(key, response));
 		return response;
 	}
 
@@ -61,11 +194,137 @@ public class KVStore {
 	 * @return True if the request is valid, false otherwise.
 	 */
 	public boolean checkReq(int key, int action) {
+		int segment = segmentOf(key);
+		boolean present;
+		long stamp = locks[segment].readLock();
+		try {
+			present = segments[segment].containsKey(key);
+		} finally {
+			locks[segment].unlockRead(stamp);
+		}
 		switch (action) {
-			case 1: return keyValueMap.containsKey(key); // get
-			case 2: return !keyValueMap.containsKey(key); // put
-			case 3: return keyValueMap.containsKey(key); // delete
+			case 1: return present; // get
+			case 2: return !present; // put
+			case 3: return present; // delete
 			default: return false;
 		}
 	}
+
+	/**
+	 * Begins a snapshot of the store. The caller must make sure no write is applied while this runs,
+	 * so that the snapshot reflects exactly the specified slot.
+	 * @param index The last slot applied to the store.
+	 * @return The snapshot, or null if another snapshot is still being taken.
+	 */
+	protected synchronized Snapshot beginSnapshot(int index) {
+		if (activeSnapshot != null) {
+			return null;
+		}
+		activeSnapshot = new Snapshot(index, SEGMENTS);
+		return activeSnapshot;
+	}
+
+	/**
+	 * Checks whether a snapshot is being copied from the store.
+	 * @return True if a snapshot has begun and not all of its segments are copied yet.
+	 */
+	protected boolean isSnapshotActive() {
+		return activeSnapshot != null;
+	}
+
+	/**
+	 * Copies every segment not yet copied by a write into the snapshot being taken, one segment at a time
+	 * under its read lock, and ends the snapshot. Reads and writes of other segments continue meanwhile.
+	 * @param snapshot The snapshot returned by beginSnapshot.
+	 */
+	protected void captureSnapshot(Snapshot snapshot) {
+		for (int i = 0; i < SEGMENTS; i++) {
+			long stamp = locks[i].readLock();
+			try {
+				snapshot.capture(i, segments[i]);
+			} finally {
+				locks[i].unlockRead(stamp);
+			}
+		}
+		synchronized (this) {
+			activeSnapshot = null;
+		}
+	}
+
+	/**
+	 * Returns the last slot fully applied to the store that the store kept from before the server started.
+	 * @return The slot, or -1 if the store keeps nothing across a restart or the server stopped in the
+	 * middle of a slot, in which case the store must be restored from the snapshot.
+	 */
+	protected int getAppliedIndex() {
+		return appliedIndex == null ? UNKNOWN_INDEX : appliedIndex.getInt(0);
+	}
+
+	/**
+	 * Records that the store is about to be changed by a slot, until {@link #finishApplying(int)} is called.
+	 */
+	protected void beginApplying() {
+		if (appliedIndex != null) {
+			appliedIndex.putInt(0, UNKNOWN_INDEX);
+		}
+	}
+
+	/**
+	 * Records the last slot fully applied to the store.
+	 * @param slot The slot.
+	 */
+	protected void finishApplying(int slot) {
+		if (appliedIndex != null) {
+			appliedIndex.putInt(0, slot);
+		}
+	}
+
+	/**
+	 * Replaces the content of the store with a snapshot file, or empties the store if there is none,
+	 * so that the log can be replayed on top of it from the slot of the snapshot.
+	 * @param file The file of the snapshot.
+	 * @return The slot of the snapshot, or 0 if there is no valid snapshot file.
+	 * @throws IOException If the file cannot be read.
+	 */
+	protected int restoreSnapshot(Path file) throws IOException {
+		beginApplying();
+		for (int i = 0; i < SEGMENTS; i++) {
+			long stamp = locks[i].writeLock();
+			try {
+				segments[i].clear();
+			} finally {
+				locks[i].unlockWrite(stamp);
+			}
+		}
+		int index = Snapshot.readFrom(file, (key, value) -> {
+			int segment = segmentOf(key);
+			long stamp = locks[segment].writeLock();
+			try {
+				segments[segment].putIfAbsent(key, value);
+			} finally {
+				locks[segment].unlockWrite(stamp);
+			}
+		});
+		finishApplying(index);
+		return index;
+	}
+
+	/**
+	 * Copies a segment into the snapshot being taken before a write changes it. The caller holds the write lock.
+	 */
+	private void preserve(int segment) {
+		Snapshot snapshot = activeSnapshot;
+		if (snapshot != null) {
+			snapshot.capture(segment, segments[segment]);
+		}
+	}
+
+	/**
+	 * Picks the segment of a key. The bits used differ from those IntIntMap uses to place the key
+	 * inside the segment, so that keys of one segment still spread over its whole table.
+	 */
+	private static int segmentOf(int key) {
+		int hash = key * 0x85EBCA6B;
+		return (hash ^ (hash >>> 16)) & (SEGMENTS - 1);
+	}
 }
@@ -1,36 +1,429 @@
 /**
  * The Learner class represents a component responsible for committing proposed operations.
- * It extends the functionality of the KVStore class and implements the Runnable interface.
+ * It applies them to the KVStore of its server and implements the Runnable interface.
+ * Decided batches are applied to the key-value store strictly in the order of their log slots,
+ * each batch atomically.
+ * Every -Dpaxos.snapshotInterval applied slots, a snapshot of the store is written in the background,
+ * after which the history up to the snapshot is discarded. The last snapshot is restored on start.
+ * The applied entries since the previous snapshot are kept, so that a lagging replica can fetch them.
  */
 package Server;
 
-public class Learner extends KVStore implements Runnable {
+import Compute.Batch;
+import Compute.LogChunk;
+import Compute.LogEntry;
+import Compute.Result;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+public class Learner implements Runnable {
+
+	/** The number of applied slots after which a new snapshot is taken, or 0 to take none. */
+	private static final int SNAPSHOT_INTERVAL = Integer.getInteger("paxos.snapshotInterval", Constants.SNAPSHOT_INTERVAL);
+
+	/** The thread writing snapshots, so that applying slots never waits for the disk. */
+	private static final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "paxos-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Logger logger = new Logger();
+
+	/** The key-value store of this server, which the decided operations are applied to. */
+	private final KVStore store;
+
+	/** The decided entries that cannot be applied yet because an earlier slot is missing. */
+	private final TreeMap<Integer, LogEntry> decidedEntries = new TreeMap<>();
+
+	/** The applied entries kept for lagging replicas, from the slot after the previous snapshot onwards. */
+	private final TreeMap<Integer, LogEntry> appliedEntries = new TreeMap<>();
+
+	/** The highest slot this learner knows to be decided, from commits and from the leader's heartbeats. */
+	private volatile int highestKnownSlot;
+
+	/** The responses the local proposer is waiting for, by slot. */
+	private final Map<Integer, CompletableFuture<long[]>> pendingResponses = new HashMap<>();
+
+	/** The maximum number of leader commit indexes remembered while this learner lags behind. */
+	private static final int MAX_PENDING_COMMIT_INDEXES = 64;
+
+	/** The last slot applied to the key-value store; read without the lock by local reads. */
+	private volatile int lastApplied;
+
+	/** The commit indexes reported by the leader and not applied yet, each with the time it was received. */
+	private final ArrayDeque<long[]> pendingCommitIndexes = new ArrayDeque<>();
+
+	/** The latest time at which the leader's commit index was known to be applied here, or 0 if never. */
+	private volatile long caughtUpAt;
+
+	/** The slot of the last snapshot begun. */
+	private int lastSnapshotIndex;
+
+	/** The slot of the snapshot before the last one written, up to which applied entries are discarded. */
+	private int previousSnapshotIndex;
+
+	/** Called with the slot of each snapshot once it is on disk. */
+	private IntConsumer snapshotListener = index -> {};
+
+	/**
+	 * Constructs a Learner object.
+	 * @param store The key-value store of the server.
+	 */
+	public Learner(KVStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Returns the key-value store this learner applies decided operations to.
+	 * @return The store.
+	 */
+	public KVStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Commits the batch decided for one slot and applies every slot that has become contiguous.
+	 * @param slot The slot of the log.
+	 * @param batch The operations of the slot.
+	 * @return The response of each operation (see {@link Compute.Response}), or an empty array
+	 * if the batch is waiting for an earlier slot or was already applied.
+	 */
+	public synchronized long[] commit(int slot, Batch batch) {
+		long[] responses = new long[0];
+		if (slot <= lastApplied) {
+			return responses;
+		}
+		highestKnownSlot = Math.max(highestKnownSlot, slot);
+		decidedEntries.put(slot, new LogEntry(slot, 0, batch));
+		while (!decidedEntries.isEmpty() && decidedEntries.firstKey() == lastApplied + 1) {
+			long[] applied = apply(decidedEntries.pollFirstEntry().getValue());
+			CompletableFuture<long[]> pending = pendingResponses.remove(lastApplied);
+			if (pending != null) {
+				pending.complete(applied);
+			}
+			if (lastApplied == slot) {
+				responses = applied;
+			}
+		}
+		// Only entries a snapshot on disk covers are discarded, so that a lagging replica can always catch up
+		while (appliedEntries.size() > Constants.MAX_RETAINED_SLOTS && appliedEntries.firstKey() <= previousSnapshotIndex) {
+			appliedEntries.pollFirstEntry();
+		}
+		applied();
+		return responses;
+	}
+
+	/**
+	 * Updates what depends on the last applied slot and wakes up the threads waiting for it.
+	 */
+	private void applied() {
+		while (!pendingCommitIndexes.isEmpty() && pendingCommitIndexes.peekFirst()[0] <= lastApplied) {
+			caughtUpAt = pendingCommitIndexes.pollFirst()[1];
+		}
+		if (SNAPSHOT_INTERVAL > 0 && lastApplied - lastSnapshotIndex >= SNAPSHOT_INTERVAL) {
+			takeSnapshot();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Returns the applied entries from the specified slot onwards, for a replica catching up.
+	 * @param fromSlot The first slot requested.
+	 * @param maxEntries The maximum number of entries to return.
+	 * @return The entries and the last applied slot; no entries if the requested slot was discarded or not applied yet.
+	 */
+	public synchronized LogChunk fetchLog(int fromSlot, int maxEntries) {
+		List<LogEntry> entries = new ArrayList<>();
+		if (!appliedEntries.isEmpty() && fromSlot >= appliedEntries.firstKey()) {
+			for (LogEntry entry : appliedEntries.tailMap(fromSlot).values()) {
+				if (entries.size() == maxEntries) {
+					break;
+				}
+				entries.add(entry);
+			}
+		}
+		return new LogChunk(lastApplied, entries);
+	}
+
+	/**
+	 * Returns part of the last snapshot written by this learner, for a replica catching up.
+	 * @param index The slot of the snapshot being fetched, or 0 for any slot.
+	 * @param offset The offset of the first byte requested.
+	 * @param length The maximum number of bytes to return.
+	 * @return The bytes of the snapshot, or none if there is no snapshot of the slot anymore.
+	 * @throws IOException If the snapshot cannot be read.
+	 */
+	public byte[] fetchSnapshot(int index, long offset, int length) throws IOException {
+		return Snapshot.readChunk(snapshotFile(), index, offset, length);
+	}
+
+	/**
+	 * Replaces the store with a snapshot fetched from another server, if it is ahead of this learner.
+	 * The decided entries after the snapshot are applied on top of it, and the snapshot becomes the one
+	 * restored on start.
+	 * @param file The file holding the fetched snapshot.
+	 * @return True if the snapshot was installed, false if it is invalid, not ahead, or a local snapshot is being taken.
+	 * @throws IOException If the snapshot cannot be read.
+	 */
+	public synchronized boolean installSnapshot(Path file) throws IOException {
+		int index = Snapshot.indexOf(file);
+		if (index <= lastApplied || store.isSnapshotActive()) {
+			return false;
+		}
+		store.restoreSnapshot(file);
+		lastApplied = index;
+		lastSnapshotIndex = index;
+		appliedEntries.clear();
+		decidedEntries.headMap(index, true).clear();
+		// The responses of the slots the snapshot covers are unknown here, so their proposers answer NO_CONSENSUS
+		IllegalStateException replaced = new IllegalStateException("The slots up to " + index + " were replaced by a snapshot.");
+		pendingResponses.entrySet().removeIf(pending -> pending.getKey() <= index && pending.getValue().completeExceptionally(replaced));
+		while (!decidedEntries.isEmpty() && decidedEntries.firstKey() == lastApplied + 1) {
+			apply(decidedEntries.pollFirstEntry().getValue());
+		}
+		applied();
+		// Queued behind any local snapshot being written, so the file ends up with the latest one.
+		snapshotExecutor.execute(() -> {
+			try {
+				Files.move(file, snapshotFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				logger.errSnapshot("Failed to keep the snapshot as of slot " + index + ": " + e.getMessage());
+				return;
+			}
+			snapshotListener.accept(index);
+		});
+		return true;
+	}
+
+	/**
+	 * Returns the highest slot this learner knows to be decided, whether applied or not.
+	 * @return The highest known slot.
+	 */
+	public int getHighestKnownSlot() {
+		return highestKnownSlot;
+	}
+
+	/**
+	 * Begins a snapshot as of the last applied slot and writes it in the background.
+	 * Only the segments are marked here, so commit goes on at once; a write that reaches a segment
+	 * before the snapshot thread copies it first.
+	 */
+	private void takeSnapshot() {
+		Snapshot snapshot = store.beginSnapshot(lastApplied);
+		if (snapshot == null) {
+			return;
+		}
+		lastSnapshotIndex = lastApplied;
+		snapshotExecutor.execute(() -> {
+			long start = System.currentTimeMillis();
+			store.captureSnapshot(snapshot);
+			try {
+				snapshot.writeTo(snapshotFile());
+			} catch (IOException e) {
+				logger.errSnapshot("Failed to write the snapshot as of slot " + snapshot.getIndex() + ": " + e.getMessage());
+				return;
+			}
+			logger.snapshotWritten(snapshot.getIndex(), System.currentTimeMillis() - start);
+			synchronized (this) {
+				appliedEntries.headMap(previousSnapshotIndex, true).clear();
+				previousSnapshotIndex = snapshot.getIndex();
+			}
+			snapshotListener.accept(snapshot.getIndex());
+		});
+	}
+
+	/**
+	 * Sets the listener called with the slot of each snapshot once it is on disk, so that the history
+	 * up to that slot can be discarded.
+	 * @param snapshotListener The listener.
+	 */
+	public void setSnapshotListener(IntConsumer snapshotListener) {
+		this.snapshotListener = snapshotListener;
+	}
+
+	private Path snapshotFile() {
+		return store.getDataDirectory().resolve("snapshot.bin");
+	}
+
+	/**
+	 * Returns the batch applied in a slot, if it is still kept.
+	 * @param slot The slot of the log.
+	 * @return The batch, or null if the slot is not applied yet or was discarded.
+	 */
+	public synchronized Batch getAppliedBatch(int slot) {
+		LogEntry entry = appliedEntries.get(slot);
+		return entry == null ? null : entry.getBatch();
+	}
+
+	/**
+	 * Registers interest in the responses of a slot before it is committed.
+	 * @param slot The slot of the log.
+	 * @return A future completed with the responses once the slot is applied, or completed exceptionally
+	 * if the slot is replaced by a snapshot fetched from another server.
+	 */
+	public synchronized CompletableFuture<long[]> expectResponse(int slot) {
+		return pendingResponses.computeIfAbsent(slot, s -> new CompletableFuture<>());
+	}
+
+	/**
+	 * Stops waiting for the response of a slot.
+	 * @param slot The slot of the log.
+	 */
+	public synchronized void forgetResponse(int slot) {
+		pendingResponses.remove(slot);
+	}
+
+	/**
+	 * Waits until the specified slot has been applied to the key-value store.
+	 * @param slot The slot of the log.
+	 * @param timeoutMillis The maximum time to wait, in milliseconds.
+	 * @return True if the slot has been applied, false if the time ran out first.
+	 */
+	public synchronized boolean awaitApplied(int slot, long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		try {
+			while (lastApplied < slot) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				wait(remaining);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a key from the key-value store without going through consensus.
+	 * The read runs in parallel with other reads and with the slot being applied, and reflects at least
+	 * the last slot applied when it started.
+	 * @param key The key.
+	 * @return The response of the get operation.
+	 */
+	public long read(int key) {
+		return store.getKey(key);
+	}
+
+	/**
+	 * Reads a key from the key-value store without going through consensus, like {@link #read(int)}.
+	 * @param key The key.
+	 * @return The response of the get operation, with the applied index and staleness it reflects at least.
+	 */
+	public Result readWithIndex(int key) {
+		int appliedIndex = lastApplied;
+		long caughtUpAt = this.caughtUpAt;
+		long staleness = caughtUpAt == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - caughtUpAt;
+		return new Result(store.getKey(key), appliedIndex, staleness);
+	}
 
 	/**
-	 * Commits a proposed operation.
-	 * @param key The key involved in the operation.
-	 * @param value The value associated with the key (for put operation).
-	 * @param reqType The type of request (1 for get, 2 for put, 3 for delete).
-	 * @return A message indicating the success or failure of the commit operation.
+	 * Records the commit index the leader reported in a heartbeat.
+	 * This learner is up to date as of the time of the heartbeat once it has applied that index.
+	 * @param commitIndex The last slot the leader has applied.
+	 * @param receivedAt The time the heartbeat was received.
 	 */
-	public String commit(int key, int value, int reqType) {
-		String response = "";
+	public synchronized void observeCommitIndex(int commitIndex, long receivedAt) {
+		highestKnownSlot = Math.max(highestKnownSlot, commitIndex);
+		if (lastApplied >= commitIndex) {
+			caughtUpAt = receivedAt;
+			pendingCommitIndexes.clear();
+			return;
+		}
+		if (pendingCommitIndexes.size() == MAX_PENDING_COMMIT_INDEXES) {
+			pendingCommitIndexes.pollFirst();
+		}
+		pendingCommitIndexes.addLast(new long[] {commitIndex, receivedAt});
+	}
+
+	/**
+	 * Returns the slot of the last snapshot written, up to which the history may be discarded.
+	 * @return The slot of the snapshot, or 0 if there is none.
+	 */
+	public synchronized int getSnapshotIndex() {
+		return previousSnapshotIndex;
+	}
+
+	/**
+	 * Returns the last slot applied to the key-value store.
+	 * @return The last applied slot, or 0 if nothing was applied yet.
+	 */
+	public int getLastApplied() {
+		return lastApplied;
+	}
+
+	/**
+	 * Applies the batch of the next slot and records the slot as applied, in the store too.
+	 * @param entry The entry of the slot after the last applied one.
+	 * @return The response of each operation.
+	 */
+	private long[] apply(LogEntry entry) {
+		store.beginApplying();
+		long[] responses = apply(entry.getBatch());
+		lastApplied = entry.getSlot();
+		store.finishApplying(lastApplied);
+		appliedEntries.put(lastApplied, entry);
+		return responses;
+	}
+
+	private long[] apply(Batch batch) {
+		long[] responses = new long[batch.size()];
+		for (int i = 0; i < batch.size(); i++) {
+			responses[i] = apply(batch.getKey(i), batch.getValue(i), batch.getAction(i));
+		}
+		return responses;
+	}
+
+	private long apply(int key, int value, int reqType) {
+		long response = 0;
 		switch (reqType) {
 			case 1:
-				response = super.getKey(key); // get
+				response = store.getKey(key); // get
 				break;
 			case 2:
-				response = super.putKey(key, value); // put
+				response = store.putKey(key, value); // put
 				break;
 			case 3:
-				response = super.deleteKey(key); // delete
+				response = store.deleteKey(key); // delete
 				break;
 		}
 		return response;
 	}
 
-	/** Starts the learner. */
-	public void start() {}
+	/**
+	 * Starts the learner, restoring the store and the last applied slot from the last snapshot, unless
+	 * the store kept every slot it had applied, as the mapped engine does.
+	 */
+	public synchronized void start() {
+		int keptIndex = store.getAppliedIndex();
+		int snapshotIndex;
+		try {
+			snapshotIndex = keptIndex >= 0 ? Snapshot.indexOf(snapshotFile()) : store.restoreSnapshot(snapshotFile());
+		} catch (IOException e) {
+			logger.errSnapshot("Failed to restore the snapshot: " + e.getMessage());
+			snapshotIndex = 0;
+		}
+		lastApplied = keptIndex >= 0 ? keptIndex : snapshotIndex;
+		lastSnapshotIndex = snapshotIndex;
+		previousSnapshotIndex = snapshotIndex;
+		highestKnownSlot = lastApplied;
+	}
 
 	@Override
 	public void run() {}
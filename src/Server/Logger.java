@@ -1,5 +1,7 @@
 package Server;
 
+import Compute.Response;
+
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -30,6 +32,21 @@ public class Logger {
         logInfo("Server " + serverNumber + " has shut down for maintenance.");
     }
 
+    // Log a server that is reachable again after a failure
+    public void peerReconnected(String serverName, long lookups, long reconnects) {
+        logInfo("Reconnected to " + serverName + " (registry lookups: " + lookups + ", reconnects: " + reconnects + ").");
+    }
+
+    // Log a snapshot of the store written to disk
+    public void snapshotWritten(int index, long millis) {
+        logInfo("Snapshot of the store as of slot " + index + " written in " + millis + " ms.");
+    }
+
+    // Log a snapshot of the store that could not be written or restored
+    public void errSnapshot(String message) {
+        logError("Snapshot: " + message);
+    }
+
     // Log the acknowledgment of receiving a request from the client
     public void ackRequestSent(String request) {
         logInfo("Client sent a request: \"" + request + "\" to the server.");
@@ -80,6 +97,27 @@ public class Logger {
         return "[INFO] Key does not exist.";
     }
 
+    // Format the response to an operation on a key as text
+    public String formatResponse(int key, long response) {
+        int value = Response.valueOf(response);
+        switch (Response.statusOf(response)) {
+            case Response.STORED:
+                return ackPut(key, value);
+            case Response.EXISTS:
+                return errPut(key, value);
+            case Response.FOUND:
+                return ackGet(key, value);
+            case Response.NOT_FOUND:
+                return errGet();
+            case Response.REMOVED:
+                return ackDel(key, value);
+            case Response.NO_CONSENSUS:
+                return errResponse(value);
+            default:
+                return "";
+        }
+    }
+
     // Log an error for an illegal request type
     public void illegalRequestTypeException() {
         logError("Received an invalid request from the user. Please check and try again.");
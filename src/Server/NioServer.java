@@ -0,0 +1,217 @@
+/**
+ * The NioServer class serves the calls of IKVStore over the NIO transport, next to the RMI registry.
+ * One EventLoop thread accepts connections and reads their frames, however many clients and peers are
+ * connected. The arguments of a call are read from the frame on the loop thread, and the call then runs on
+ * a worker thread, since it may wait for consensus; its reply is written into a pooled buffer and sent back
+ * on the connection it came from, tagged with the identifier of the request.
+ * The workers are two fixed pools, so that any number of pipelined requests costs queue entries rather
+ * than threads: client calls, which wait for consensus, run on -Dpaxos.nio.clientWorkers threads, and the
+ * calls between servers that consensus itself needs run on their own -Dpaxos.nio.peerWorkers threads,
+ * so that they are never queued behind client calls waiting for them.
+ */
+package Server;
+
+import Compute.BufferPool;
+import Compute.EventLoop;
+import Compute.FrameConnection;
+import Compute.IKVStore;
+import Compute.RpcCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class NioServer implements FrameConnection.Handler {
+
+	/** The threads running client calls; a call blocks its thread until it is answered. */
+	private static final ExecutorService clientWorkers = workers("paxos-nio-client-worker",
+			Integer.getInteger("paxos.nio.clientWorkers", Constants.NIO_CLIENT_WORKERS));
+
+	/** The threads running the calls between servers. */
+	private static final ExecutorService peerWorkers = workers("paxos-nio-peer-worker",
+			Integer.getInteger("paxos.nio.peerWorkers", Constants.NIO_PEER_WORKERS));
+
+	private final IKVStore target;
+	private final EventLoop loop = new EventLoop("paxos-nio-server");
+
+	/**
+	 * Constructs a NioServer object.
+	 * @param target The server the calls are made on.
+	 */
+	public NioServer(IKVStore target) {
+		this.target = target;
+	}
+
+	/**
+	 * Starts accepting connections on a port of every local address.
+	 * @param port The port to listen on.
+	 * @throws IOException If the port cannot be bound.
+	 */
+	public void listen(int port) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		server.bind(new InetSocketAddress(port));
+		loop.listen(server, this);
+	}
+
+	private static ExecutorService workers(String name, int threads) {
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void frameReceived(FrameConnection connection, ByteBuffer frame) {
+		int requestId = frame.getInt();
+		ExecutorService workers = isClientMethod(frame.get(frame.position())) ? clientWorkers : peerWorkers;
+		Call call;
+		try {
+			call = decode(frame);
+		} catch (RuntimeException e) {
+			call = reply -> {
+				throw new IllegalArgumentException("Malformed request: " + e.getMessage());
+			};
+		}
+		Call decoded = call;
+		workers.execute(() -> {
+			try {
+				connection.send(run(requestId, decoded));
+			} catch (IOException e) {
+				// The caller went away; it sees the connection closed
+			}
+		});
+	}
+
+	@Override
+	public void closed(FrameConnection connection) {
+		// Calls still running on the connection drop their replies
+	}
+
+	/**
+	 * Tells whether a method is called by clients, or by servers forwarding client calls, and may therefore
+	 * wait for consensus.
+	 */
+	private static boolean isClientMethod(byte method) {
+		switch (method) {
+			case RpcCodec.GET:
+			case RpcCodec.PUT:
+			case RpcCodec.DELETE:
+			case RpcCodec.STALE_GET:
+			case RpcCodec.SUBMIT_BATCH:
+			case RpcCodec.PROPOSE:
+			case RpcCodec.PROPOSE_BATCH:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/** A decoded call, which writes its return value into the reply. */
+	private interface Call {
+		void writeTo(RpcCodec.Writer reply) throws Exception;
+	}
+
+	/**
+	 * Reads the method and arguments of a request frame, on the loop thread, while the frame is still valid.
+	 * @return The call, to be run on a worker thread.
+	 */
+	private Call decode(ByteBuffer frame) {
+		byte method = frame.get();
+		switch (method) {
+			case RpcCodec.GET: {
+				int key = frame.getInt();
+				return reply -> reply.putLong(target.get(key));
+			}
+			case RpcCodec.PUT: {
+				int key = frame.getInt();
+				int value = frame.getInt();
+				return reply -> reply.putLong(target.put(key, value));
+			}
+			case RpcCodec.DELETE: {
+				int key = frame.getInt();
+				return reply -> reply.putLong(target.delete(key));
+			}
+			case RpcCodec.STALE_GET: {
+				int key = frame.getInt();
+				int minIndex = frame.getInt();
+				long maxStalenessMillis = frame.getLong();
+				return reply -> reply.putResult(target.staleGet(key, minIndex, maxStalenessMillis));
+			}
+			case RpcCodec.APPLIED_INDEX:
+				return reply -> reply.putInt(target.appliedIndex());
+			case RpcCodec.SUBMIT_BATCH: {
+				byte[] batch = RpcCodec.getBytes(frame);
+				return reply -> reply.putLongs(target.submitBatch(batch));
+			}
+			case RpcCodec.PREPARE_BATCH: {
+				int serverNumber = frame.getInt();
+				int proposalId = frame.getInt();
+				int fromSlot = frame.getInt();
+				return reply -> reply.putBytes(target.prepareBatch(serverNumber, proposalId, fromSlot));
+			}
+			case RpcCodec.ACCEPT_BATCH: {
+				int proposalId = frame.getInt();
+				int slot = frame.getInt();
+				byte[] batch = RpcCodec.getBytes(frame);
+				return reply -> reply.putInt(target.acceptBatch(proposalId, slot, batch));
+			}
+			case RpcCodec.COMMIT_BATCH: {
+				int slot = frame.getInt();
+				byte[] batch = RpcCodec.getBytes(frame);
+				return reply -> reply.putLongs(target.commitBatch(slot, batch));
+			}
+			case RpcCodec.PROPOSE: {
+				int key = frame.getInt();
+				int value = frame.getInt();
+				int action = frame.getInt();
+				return reply -> reply.putResult(target.propose(key, value, action));
+			}
+			case RpcCodec.PROPOSE_BATCH: {
+				byte[] batch = RpcCodec.getBytes(frame);
+				return reply -> reply.putBatchResult(target.proposeBatch(batch));
+			}
+			case RpcCodec.HEARTBEAT: {
+				int serverNumber = frame.getInt();
+				int proposalId = frame.getInt();
+				int commitIndex = frame.getInt();
+				return reply -> reply.putByte(target.heartbeat(serverNumber, proposalId, commitIndex) ? (byte) 1 : (byte) 0);
+			}
+			case RpcCodec.READ_INDEX:
+				return reply -> reply.putInt(target.readIndex());
+			case RpcCodec.FETCH_LOG: {
+				int fromSlot = frame.getInt();
+				int maxEntries = frame.getInt();
+				return reply -> reply.putBytes(target.fetchLog(fromSlot, maxEntries));
+			}
+			case RpcCodec.FETCH_SNAPSHOT: {
+				int index = frame.getInt();
+				long offset = frame.getLong();
+				int length = frame.getInt();
+				return reply -> reply.putBytes(target.fetchSnapshot(index, offset, length));
+			}
+			default:
+				throw new IllegalArgumentException("Unknown method " + method + ".");
+		}
+	}
+
+	/**
+	 * Runs a call.
+	 * @return The reply frame, carrying either the return value or the message of the exception thrown.
+	 */
+	private ByteBuffer run(int requestId, Call call) {
+		RpcCodec.Writer reply = new RpcCodec.Writer(requestId, RpcCodec.OK);
+		try {
+			call.writeTo(reply);
+			return reply.toFrame();
+		} catch (Exception e) {
+			BufferPool.release(reply.toFrame());
+			return new RpcCodec.Writer(requestId, RpcCodec.ERROR).putString(String.valueOf(e.getMessage())).toFrame();
+		}
+	}
+}
@@ -0,0 +1,406 @@
+/**
+ * The OffHeapIntIntMap class represents a map from int keys to int values stored outside of the Java heap.
+ * It uses the same open addressing table as IntIntMap, but keeps the table in a ByteBuffer: either a direct
+ * buffer, or a buffer mapped from a file so that the entries survive a restart of the server. Either way the
+ * entries cost the garbage collector nothing, however large the store grows.
+ * The buffer starts with a header holding the capacity, the size and the entry of FREE_KEY, followed by the
+ * key and value of each slot next to each other. The map is not thread-safe.
+ * A mapped table grows into a new file rather than replacing its file, which cannot be replaced on Windows
+ * while it is mapped: each file is numbered with a generation after the name of the map, the latest
+ * complete generation is the table, and the older ones are deleted once nothing maps them.
+ */
+package Server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class OffHeapIntIntMap implements IntIntStore {
+
+	/** The first int of every table, telling a table apart from a foreign or truncated file. */
+	private static final int MAGIC = 0x4B565331;
+
+	private static final int MAGIC_OFFSET = 0;
+	private static final int CAPACITY_OFFSET = 4;
+	private static final int SIZE_OFFSET = 8;
+	private static final int HAS_FREE_KEY_OFFSET = 12;
+	private static final int FREE_KEY_VALUE_OFFSET = 16;
+
+	/** The size of the header in bytes. */
+	private static final int HEADER = 32;
+
+	/** The size of a slot in bytes: a key followed by its value. */
+	private static final int SLOT = 8;
+
+	/** The initial number of slots of a new table. */
+	private static final int INITIAL_CAPACITY = 32;
+
+	/** The file the table is mapped from, without its generation, or null for a direct buffer. */
+	private final Path file;
+
+	/** The generation of the file the table is mapped from, or -1 for a direct buffer. */
+	private long generation = -1;
+
+	/** The generation of the file the next table is mapped from, after every file already there. */
+	private long nextGeneration;
+
+	private ByteBuffer table;
+	private int mask;
+	private int shift;
+	private int size;
+	private int resizeThreshold;
+
+	private OffHeapIntIntMap(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Creates an empty map stored in a direct buffer.
+	 * @return The map.
+	 */
+	public static OffHeapIntIntMap direct() {
+		OffHeapIntIntMap map = new OffHeapIntIntMap(null);
+		map.install(map.allocate(INITIAL_CAPACITY));
+		return map;
+	}
+
+	/**
+	 * Opens a map stored in memory-mapped files, restoring the entries of the latest complete generation.
+	 * Without one, the map starts with an empty table.
+	 * @param file The file of the map, which the generations are numbered after.
+	 * @return The map.
+	 * @throws UncheckedIOException If the file cannot be created or mapped.
+	 */
+	public static OffHeapIntIntMap mapped(Path file) {
+		OffHeapIntIntMap map = new OffHeapIntIntMap(file);
+		try {
+			Files.createDirectories(file.toAbsolutePath().getParent());
+			List<Long> generations = map.listGenerations();
+			if (!generations.isEmpty()) {
+				map.nextGeneration = generations.get(0) + 1;
+			}
+			for (long generation : generations) {
+				Path path = map.generationFile(generation);
+				if (Files.size(path) < HEADER) {
+					continue;
+				}
+				ByteBuffer existing = map(path, Files.size(path));
+				int capacity = existing.getInt(CAPACITY_OFFSET);
+				if (existing.getInt(MAGIC_OFFSET) == MAGIC && Integer.bitCount(capacity) == 1
+						&& existing.capacity() == HEADER + (long) capacity * SLOT) {
+					map.generation = generation;
+					map.table = existing;
+					map.attach();
+					map.deleteOlderGenerations();
+					return map;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		map.install(map.allocate(INITIAL_CAPACITY));
+		return map;
+	}
+
+	@Override
+	public int get(int key) {
+		if (key == FREE_KEY) {
+			return hasFreeKey() ? table.getInt(FREE_KEY_VALUE_OFFSET) : NO_VALUE;
+		}
+		int index = indexOf(key);
+		return index < 0 ? NO_VALUE : valueAt(index);
+	}
+
+	@Override
+	public boolean containsKey(int key) {
+		return key == FREE_KEY ? hasFreeKey() : indexOf(key) >= 0;
+	}
+
+	@Override
+	public boolean putIfAbsent(int key, int value) {
+		if (key == FREE_KEY) {
+			if (hasFreeKey()) {
+				return false;
+			}
+			table.putInt(FREE_KEY_VALUE_OFFSET, value);
+			table.putInt(HAS_FREE_KEY_OFFSET, 1);
+			setSize(size + 1);
+			return true;
+		}
+		int index = slotOf(key);
+		int current;
+		while ((current = keyAt(index)) != FREE_KEY) {
+			if (current == key) {
+				return false;
+			}
+			index = (index + 1) & mask;
+		}
+		table.putInt(offsetOf(index) + 4, value);
+		table.putInt(offsetOf(index), key);
+		setSize(size + 1);
+		if (size > resizeThreshold) {
+			rehash((mask + 1) << 1);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean remove(int key) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey()) {
+				return false;
+			}
+			table.putInt(HAS_FREE_KEY_OFFSET, 0);
+			setSize(size - 1);
+			return true;
+		}
+		int index = indexOf(key);
+		if (index < 0) {
+			return false;
+		}
+		shiftBack(index);
+		setSize(size - 1);
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i <= mask; i++) {
+			table.putInt(offsetOf(i), FREE_KEY);
+		}
+		table.putInt(HAS_FREE_KEY_OFFSET, 0);
+		setSize(0);
+	}
+
+	@Override
+	public void forEach(EntryVisitor visitor) {
+		if (hasFreeKey()) {
+			visitor.visit(FREE_KEY, table.getInt(FREE_KEY_VALUE_OFFSET));
+		}
+		for (int i = 0; i <= mask; i++) {
+			int key = keyAt(i);
+			if (key != FREE_KEY) {
+				visitor.visit(key, valueAt(i));
+			}
+		}
+	}
+
+	private boolean hasFreeKey() {
+		return table.getInt(HAS_FREE_KEY_OFFSET) != 0;
+	}
+
+	private void setSize(int size) {
+		this.size = size;
+		table.putInt(SIZE_OFFSET, size);
+	}
+
+	private static int offsetOf(int index) {
+		return HEADER + index * SLOT;
+	}
+
+	private int keyAt(int index) {
+		return table.getInt(offsetOf(index));
+	}
+
+	private int valueAt(int index) {
+		return table.getInt(offsetOf(index) + 4);
+	}
+
+	private int slotOf(int key) {
+		return (key * HASH_MULTIPLIER) >>> shift;
+	}
+
+	private int indexOf(int key) {
+		int index = slotOf(key);
+		int current;
+		while ((current = keyAt(index)) != FREE_KEY) {
+			if (current == key) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Frees a slot and moves back every following entry of the probe sequence whose home slot
+	 * is not between the freed slot and its current slot, so that no lookup stops early.
+	 */
+	private void shiftBack(int freed) {
+		int current = freed;
+		while (true) {
+			current = (current + 1) & mask;
+			int key = keyAt(current);
+			if (key == FREE_KEY) {
+				break;
+			}
+			int home = slotOf(key);
+			boolean staysInPlace = freed <= current
+					? freed < home && home <= current
+					: freed < home || home <= current;
+			if (!staysInPlace) {
+				table.putInt(offsetOf(freed), key);
+				table.putInt(offsetOf(freed) + 4, valueAt(current));
+				freed = current;
+			}
+		}
+		table.putInt(offsetOf(freed), FREE_KEY);
+	}
+
+	/**
+	 * Reads the fields cached on the heap from the header of the current table.
+	 */
+	private void attach() {
+		int capacity = table.getInt(CAPACITY_OFFSET);
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+		size = table.getInt(SIZE_OFFSET);
+	}
+
+	/**
+	 * Creates an empty table with the specified number of slots. A mapped table is created in the file of
+	 * the next generation, which is told apart from a complete one by its missing magic number until install.
+	 */
+	private ByteBuffer allocate(int capacity) {
+		long bytes = HEADER + (long) capacity * SLOT;
+		ByteBuffer created;
+		if (file == null) {
+			created = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+		} else {
+			try {
+				created = map(generationFile(nextGeneration), bytes);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		// New direct buffers and new file regions are zero-filled, so every slot already holds FREE_KEY.
+		created.putInt(CAPACITY_OFFSET, capacity);
+		return created;
+	}
+
+	/**
+	 * Moves every entry into a table with the specified number of slots. A crash during a rehash of a
+	 * mapped table leaves the old generation as the latest complete one.
+	 */
+	private void rehash(int capacity) {
+		ByteBuffer old = table;
+		int oldCapacity = mask + 1;
+		ByteBuffer created = allocate(capacity);
+		int newMask = capacity - 1;
+		int newShift = Integer.numberOfLeadingZeros(capacity) + 1;
+		for (int i = 0; i < oldCapacity; i++) {
+			int key = old.getInt(offsetOf(i));
+			if (key != FREE_KEY) {
+				int index = (key * HASH_MULTIPLIER) >>> newShift;
+				while (created.getInt(offsetOf(index)) != FREE_KEY) {
+					index = (index + 1) & newMask;
+				}
+				created.putInt(offsetOf(index) + 4, old.getInt(offsetOf(i) + 4));
+				created.putInt(offsetOf(index), key);
+			}
+		}
+		created.putInt(HAS_FREE_KEY_OFFSET, old.getInt(HAS_FREE_KEY_OFFSET));
+		created.putInt(FREE_KEY_VALUE_OFFSET, old.getInt(FREE_KEY_VALUE_OFFSET));
+		created.putInt(SIZE_OFFSET, size);
+		install(created);
+	}
+
+	/**
+	 * Makes a table filled by allocate the current one, marking it complete. A mapped table becomes the
+	 * latest generation, and the files of the older ones are deleted.
+	 */
+	private void install(ByteBuffer created) {
+		created.putInt(MAGIC_OFFSET, MAGIC);
+		table = created;
+		attach();
+		if (file != null) {
+			generation = nextGeneration++;
+			deleteOlderGenerations();
+		}
+	}
+
+	private Path generationFile(long generation) {
+		return file.resolveSibling(file.getFileName() + "." + generation);
+	}
+
+	/**
+	 * Lists the generations with a file next to the file of the map.
+	 * @return The generations, the latest first.
+	 */
+	private List<Long> listGenerations() throws IOException {
+		List<Long> generations = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(file.toAbsolutePath().getParent(), file.getFileName() + ".*")) {
+			for (Path path : files) {
+				long generation = generationOf(path);
+				if (generation >= 0) {
+					generations.add(generation);
+				}
+			}
+		}
+		generations.sort(Collections.reverseOrder());
+		return generations;
+	}
+
+	/**
+	 * Deletes the files of the map older than the current generation. A file still mapped by a table
+	 * not collected yet cannot be deleted on Windows; it is deleted by a later rehash or start instead.
+	 */
+	private void deleteOlderGenerations() {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(file.toAbsolutePath().getParent(), file.getFileName() + "*")) {
+			for (Path path : files) {
+				if (generationOf(path) < generation) {
+					try {
+						Files.deleteIfExists(path);
+					} catch (IOException e) {
+						// Left for a later attempt
+					}
+				}
+			}
+		} catch (IOException e) {
+			// Left for a later attempt
+		}
+	}
+
+	/**
+	 * Returns the generation of a file of the map.
+	 * @return The generation, or -1 for a file of the map without one, such as one left by an older version.
+	 */
+	private long generationOf(Path path) {
+		String name = path.getFileName().toString();
+		String prefix = file.getFileName() + ".";
+		if (!name.startsWith(prefix)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(name.substring(prefix.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Maps a file of the specified length, extending it with zeros if it is shorter.
+	 */
+	private static ByteBuffer map(Path path, long bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// The mapping stays valid after the channel is closed.
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.nativeOrder());
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * The PeerConnectionManager class keeps one stub per server and shares it between all proposals.
+ * With the NIO transport the stub is one multiplexed connection, so all calls to a server share it.
+ * A stub is resolved from the registry once and only resolved again after a call to it has failed,
+ * using an exponential backoff so that an unreachable server is not looked up on every request.
+ */
+package Server;
+
+import Compute.IKVStore;
+import Compute.NioStub;
+
+import java.net.SocketTimeoutException;
+import java.rmi.ConnectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PeerConnectionManager {
+
+	/**
+	 * A remote call made on the stub of a server.
+	 * @param <T> The type of the reply.
+	 */
+	public interface RemoteCall<T> {
+		T invoke(IKVStore stub) throws RemoteException, SocketTimeoutException;
+	}
+
+	/**
+	 * Resolves the stub of a server, from its registry or from another transport.
+	 */
+	public interface Lookup {
+		IKVStore lookup(String name, String host) throws RemoteException, NotBoundException;
+	}
+
+	/** The health of the connection to a server. */
+	public enum Health { UNKNOWN, HEALTHY, UNREACHABLE }
+
+	/** The logger instance for logging messages. */
+	private final Logger logger = new Logger();
+
+	/** The servers by name, in the order they are listed in the properties. */
+	private final Map<String, Peer> peers = new LinkedHashMap<>();
+
+	/** Resolves the stubs of the servers. */
+	private final Lookup lookup;
+
+	/** The number of registry lookups done so far. */
+	private final AtomicLong lookupCount = new AtomicLong();
+
+	/** The number of lookups done to replace the stub of a server that failed. */
+	private final AtomicLong reconnectCount = new AtomicLong();
+
+	/**
+	 * Constructs a PeerConnectionManager for the specified servers.
+	 * @param serverMap The host of each server, by server name.
+	 */
+	public PeerConnectionManager(Map<String, String> serverMap) {
+		this(serverMap, ServerStoreUtil::lookup);
+	}
+
+	/**
+	 * Constructs a PeerConnectionManager for the specified servers, resolving their stubs with a custom lookup.
+	 * @param serverMap The host of each server, by server name.
+	 * @param lookup The lookup resolving the stub of a server.
+	 */
+	public PeerConnectionManager(Map<String, String> serverMap, Lookup lookup) {
+		this.lookup = lookup;
+		for (Map.Entry<String, String> entry : serverMap.entrySet()) {
+			peers.put(entry.getKey(), new Peer(entry.getKey(), entry.getValue()));
+		}
+	}
+
+	/**
+	 * Returns the names of the servers managed by this object.
+	 * @return The server names.
+	 */
+	public Set<String> getPeerNames() {
+		return Collections.unmodifiableSet(peers.keySet());
+	}
+
+	/**
+	 * Calls a server through its cached stub.
+	 * If the call fails with a RemoteException the stub is dropped and resolved again on a later call.
+	 * @param name The name of the server.
+	 * @param call The call to make.
+	 * @return The reply of the server.
+	 * @throws RemoteException If the server is unreachable, backing off, or the call failed.
+	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
+	 */
+	public <T> T call(String name, RemoteCall<T> call) throws RemoteException, SocketTimeoutException {
+		Peer peer = peers.get(name);
+		IKVStore stub = peer.getStub();
+		try {
+			T reply = call.invoke(stub);
+			peer.markHealthy();
+			return reply;
+		} catch (RemoteException | SocketTimeoutException e) {
+			peer.markFailed(stub);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the health of the connection to a server.
+	 * @param name The name of the server.
+	 * @return The health of the connection.
+	 */
+	public Health getHealth(String name) {
+		return peers.get(name).health;
+	}
+
+	/**
+	 * Returns the number of registry lookups done so far.
+	 * @return The lookup count.
+	 */
+	public long getLookupCount() {
+		return lookupCount.get();
+	}
+
+	/**
+	 * Returns the number of lookups done to replace the stub of a server that failed.
+	 * @return The reconnect count.
+	 */
+	public long getReconnectCount() {
+		return reconnectCount.get();
+	}
+
+	/** The connection state of a single server. */
+	private class Peer {
+
+		private final String name;
+		private final String host;
+		private volatile IKVStore stub;
+		private volatile Health health = Health.UNKNOWN;
+		private int failures;
+		private long nextAttemptTime;
+
+		Peer(String name, String host) {
+			this.name = name;
+			this.host = host;
+		}
+
+		/**
+		 * Returns the cached stub, looking it up in the registry if there is none.
+		 */
+		IKVStore getStub() throws RemoteException {
+			IKVStore current = stub;
+			if (current != null) {
+				return current;
+			}
+			synchronized (this) {
+				if (stub != null) {
+					return stub;
+				}
+				if (System.currentTimeMillis() < nextAttemptTime) {
+					throw new ConnectException(name + " is unreachable, retrying later.");
+				}
+				lookupCount.incrementAndGet();
+				if (failures > 0) {
+					reconnectCount.incrementAndGet();
+				}
+				try {
+					stub = lookup.lookup(name, host);
+					return stub;
+				} catch (NotBoundException | RemoteException e) {
+					markFailed(null);
+					throw e instanceof RemoteException ? (RemoteException) e : new ConnectException(name + " is not bound.", e);
+				}
+			}
+		}
+
+		synchronized void markHealthy() {
+			if (health != Health.HEALTHY && failures > 0) {
+				logger.peerReconnected(name, lookupCount.get(), reconnectCount.get());
+			}
+			failures = 0;
+			health = Health.HEALTHY;
+		}
+
+		/**
+		 * Drops the failed stub, unless another thread already replaced it, and schedules the next lookup.
+		 */
+		synchronized void markFailed(IKVStore failedStub) {
+			if (failedStub != null && failedStub != stub) {
+				return;
+			}
+			if (stub instanceof NioStub) {
+				// Fails the other calls on the connection too, which then look the server up again
+				((NioStub) stub).close();
+			}
+			stub = null;
+			health = Health.UNREACHABLE;
+			long backoff = Math.min(Constants.PEER_RETRY_BACKOFF_MS << Math.min(failures, 16), Constants.PEER_MAX_BACKOFF_MS);
+			nextAttemptTime = System.currentTimeMillis() + backoff;
+			failures++;
+		}
+	}
+}
@@ -1,41 +1,199 @@
 /**
  * The Proposer class represents a component responsible for proposing operations in a distributed consensus protocol.
- * It extends the functionality of the KVStore class and implements the Runnable interface.
+ * It implements the Runnable interface, sending the heartbeats of the leader.
  */
 package Server;
 
+import Compute.Batch;
+import Compute.BatchCodec;
+import Compute.BatchResult;
 import Compute.IKVStore;
+import Compute.LogEntry;
+import Compute.Promise;
+import Compute.Response;
+import Compute.Result;
+
 import java.net.SocketTimeoutException;
-import java.rmi.NotBoundException;
+import java.rmi.ConnectException;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
-public class Proposer extends KVStore implements Runnable {
+public class Proposer implements Runnable {
 
 	/** The logger instance for logging messages. */
 	private final Logger logger = new Logger();
 
+	/**
+	 * The executor used to contact all servers concurrently; slow servers finish in the background.
+	 * Every call holds a slot of its server in phaseTracker or commitTracker, so it has a thread per slot
+	 * and a hung server can hold no more threads than its own slots.
+	 */
+	private final ExecutorService fanOutExecutor;
+
+	/** The cached connections to all servers, including this one. */
+	private final PeerConnectionManager peers;
+
+	/** The number of positive replies needed for a phase to succeed: a majority of the servers. */
+	private final int majority;
+
+	/** Whether a leader skips the prepare phase while it holds its lease (Multi-Paxos). */
+	private static final boolean MULTI_PAXOS = Boolean.parseBoolean(System.getProperty("paxos.multiPaxos", "true"));
+
+	/** The number of slots that may be in their accept phase at the same time; one when every operation is prepared. */
+	private static final int PIPELINE_WINDOW = MULTI_PAXOS ? Integer.getInteger("paxos.pipelineWindow", Constants.PIPELINE_WINDOW) : 1;
+
+	/** The number of times a batch is tried before the proposer gives up on it. */
+	private static final int MAX_PROPOSE_ATTEMPTS = Integer.getInteger("paxos.proposeAttempts", Constants.MAX_PROPOSE_ATTEMPTS);
+
+	/** The result of a prepare phase that established the leadership, which is no response of an operation. */
+	private static final long PREPARED = 0;
+
 	/** The current proposal identifier. */
-	private static int proposalId;
+	private int proposalId;
+
+	/** Guards the proposal identifier, the leadership and the assignment of slots. */
+	private final Object leadershipLock = new Object();
+
+	/** Limits the number of slots in their accept phase to the pipeline window. */
+	private final Semaphore inFlightSlots = new Semaphore(PIPELINE_WINDOW, true);
 
-	/** The value to be proposed. */
-	private int value;
+	/** The commits sent to the other learners without waiting for them. */
+	private final CommitTracker commitTracker = new CommitTracker(2 * PIPELINE_WINDOW);
+
+	/** The prepare, accept and heartbeat calls to each server, including those still running after their phase. */
+	private final CommitTracker phaseTracker = new CommitTracker(2 * PIPELINE_WINDOW);
+
+	/** The time until which this proposer is the leader for its current proposal identifier. */
+	private volatile long leaseExpiry;
+
+	/** The time until which a majority has granted this leader the lease through heartbeats, so it may read locally. */
+	private volatile long readLeaseExpiry;
+
+	/** The server that proposed the highest ballot seen in a rejection, or 0 if none is known. */
+	private volatile int leaderHint;
+
+	/** The highest index reported by the leader for operations this server forwarded to it. */
+	private final AtomicInteger forwardedIndex = new AtomicInteger();
+
+	/** The last slot this leader recovered from its predecessors when it was elected. */
+	private volatile int recoveredThrough;
+
+	/** The number of the server this proposer runs on. */
+	private int serverNumber;
+
+	/** The learner of this server, which applies decided slots and hands back their responses. */
+	private Learner learner;
 
 	/**
-	 * Constructs a Proposer object.
+	 * The sequence of the identifiers this proposer gives batches, below the server number in the top byte.
+	 * It starts from the clock, so that a restarted server does not reuse the identifiers of its earlier batches.
+	 */
+	private final AtomicLong batchSequence = new AtomicLong(System.currentTimeMillis() << 12);
+
+	/** The next free slot of the log while this proposer is the leader. */
+	private int nextSlot;
+
+	/**
+	 * Constructs a Proposer object for the servers of the properties file.
 	 */
 	public Proposer() {
-		super();
+		this(new PeerConnectionManager(ServerStoreUtil.getServerMap()));
+	}
+
+	/**
+	 * Constructs a Proposer object.
+	 * @param peers The connections to all servers, including this one.
+	 */
+	public Proposer(PeerConnectionManager peers) {
+		this.peers = peers;
+		this.majority = peers.getPeerNames().size() / 2 + 1;
+		int threads = peers.getPeerNames().size() * (phaseTracker.getMaxInFlight() + commitTracker.getMaxInFlight());
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "paxos-fan-out");
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		this.fanOutExecutor = executor;
+	}
+
+	/**
+	 * Sets the server number for this proposer.
+	 * @param serverNumber The server number to set.
+	 */
+	public void setServerNumber(int serverNumber) {
+		this.serverNumber = serverNumber;
+	}
+
+	/**
+	 * Sets the learner of the server this proposer runs on.
+	 * @param learner The learner to set.
+	 */
+	public void setLearner(Learner learner) {
+		this.learner = learner;
+	}
+
+	/**
+	 * Checks whether this proposer currently holds the leader lease.
+	 * @return True if this proposer is the leader, false otherwise.
+	 */
+	public boolean isLeader() {
+		return MULTI_PAXOS && System.currentTimeMillis() < leaseExpiry;
+	}
+
+	/**
+	 * Returns the number of slots that may be in their accept phase at the same time.
+	 * @return The pipeline window.
+	 */
+	public int getPipelineWindow() {
+		return PIPELINE_WINDOW;
 	}
 
 	/**
-	 * Sets the value to be proposed.
-	 * @param value The value to be proposed.
+	 * Checks whether this proposer may answer reads from the local store without consensus.
+	 * This holds while a majority has granted it the leader lease, which keeps every other server
+	 * from being elected, and once its learner has applied every slot recovered from previous leaders.
+	 * @return True if reads can be served locally, false otherwise.
 	 */
-	public void setValue(int value) {
-		this.value = value;
+	public boolean holdsReadLease() {
+		return isLeader() && System.currentTimeMillis() < readLeaseExpiry && learner.getLastApplied() >= recoveredThrough;
+	}
+
+	/**
+	 * Asks all servers for the highest slot they accepted and returns the highest reported by a majority.
+	 * Once the local learner has applied that slot, it reflects every operation acknowledged before the call.
+	 * @return The read index, or -1 if no majority replied.
+	 */
+	public int readIndex() {
+		List<Integer> indexes = attemptPhase(peers.getPeerNames(), IKVStore::readIndex, index -> true);
+		if (indexes.size() < majority) {
+			return -1;
+		}
+		int readIndex = 0;
+		for (int index : indexes) {
+			readIndex = Math.max(readIndex, index);
+		}
+		return readIndex;
 	}
 
 	/** Starts the proposer. */
@@ -44,73 +202,566 @@ public class Proposer extends KVStore implements Runnable {
 	}
 
 	/**
-	 * Proposes an operation in the distributed consensus protocol.
+	 * Makes the next proposal of this server higher than a proposal identifier seen before, such as
+	 * the one the acceptor of this server promised before a restart.
+	 * @param seenProposalId The proposal identifier seen.
+	 */
+	public void advanceProposalId(int seenProposalId) {
+		synchronized (leadershipLock) {
+			if (seenProposalId > proposalId) {
+				proposalId = seenProposalId;
+				leaderHint = Ballot.serverOf(seenProposalId);
+				// Whoever proposed it has preempted the leadership of this proposer
+				leaseExpiry = 0;
+				readLeaseExpiry = 0;
+			}
+		}
+	}
+
+	/**
+	 * Proposes a single operation for the next free slot of the log.
 	 * @param key The key involved in the operation.
 	 * @param value The value associated with the key.
 	 * @param reqType The type of request (1 for get, 2 for put, 3 for delete).
-	 * @return A message indicating the success or failure of the proposed operation.
+	 * @return The response of the operation, see {@link Response}.
 	 */
-	public synchronized String propose(int key, int value, int reqType) {
-		proposalId++;
-		setValue(key);
-		Map<String, String> serverMap = ServerStoreUtil.getServerMap();
+	public long propose(int key, int value, int reqType) {
+		return propose(Batch.of(key, value, reqType))[0];
+	}
+
+	/**
+	 * Proposes a batch of operations as the value of the next free slot of the log,
+	 * forwarding it to the leader if a rejection named another server as the leader.
+	 * @param batch The operations to propose.
+	 * @return The response of each operation.
+	 */
+	public long[] propose(Batch batch) {
+		return propose(batch, true);
+	}
 
-		// Try to prepare
-		int countPrepare = attemptPhase("prepare", serverMap, proposalId, key, value, reqType);
-		if (countPrepare <= Constants.NUMBER_OF_SERVERS / 2) {
-			return logAndReturnErrorResponse(countPrepare);
+	/**
+	 * Proposes a batch of operations as the value of the next free slot of the log.
+	 * While this proposer holds the leader lease the prepare phase is skipped and the batch
+	 * is accepted under the proposal identifier the leader was elected with.
+	 * Up to the pipeline window of batches are in their accept phase at the same time, each in its own slot.
+	 * A rejected attempt is tried again after a random delay that doubles with every attempt, so that
+	 * dueling proposers stop preempting each other. A batch whose accept phase failed may still be decided
+	 * in its slot, so it is only proposed again once a new prepare phase shows that it was not.
+	 * @param batch The operations to propose, given an identifier here unless they already have one.
+	 * @param mayForward Whether the batch may be forwarded to the server a rejection named as the leader.
+	 * @return The response of each operation.
+	 */
+	public long[] propose(Batch batch, boolean mayForward) {
+		if (batch.getId() == 0) {
+			batch = batch.withId(((long) serverNumber << 56) | batchSequence.incrementAndGet());
+		}
+		Set<String> serverNames = peers.getPeerNames();
+		byte[] frame = BatchCodec.encode(batch);
+		long error = Response.of(Response.NO_CONSENSUS, 0);
+		// The slot whose accept phase failed with this batch, the ballot it was sent with, and its responses
+		int undecidedSlot = 0;
+		int undecidedBallot = 0;
+		CompletableFuture<long[]> undecidedResponse = null;
+		for (int attempt = 0; attempt < MAX_PROPOSE_ATTEMPTS; attempt++) {
+			if (attempt > 0 && !backOff(attempt)) {
+				break;
+			}
+			int hint = leaderHint;
+			boolean otherLeader = mayForward && hint != 0 && hint != serverNumber && !isLeader();
+			if (otherLeader && undecidedSlot == 0) {
+				try {
+					return forwardBatch(hint, frame);
+				} catch (ConnectException e) {
+					// The hinted leader is unreachable, so this server tries to lead
+					leaderHint = 0;
+					continue;
+				} catch (RemoteException | SocketTimeoutException e) {
+					// The leader may have applied the batch, so proposing it again could apply it twice
+					leaderHint = 0;
+					break;
+				}
+			}
+			if (!otherLeader) {
+				try {
+					inFlightSlots.acquire();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				try {
+					int ballot = 0;
+					int slot = 0;
+					List<LogEntry> recovery = new ArrayList<>();
+					synchronized (leadershipLock) {
+						if (undecidedSlot != 0 && proposalId == undecidedBallot) {
+							// Only a prepare phase run since the failed accept phase tells whether the batch was chosen
+							leaseExpiry = 0;
+						}
+						if (!isLeader()) {
+							long prepareError = prepareLeadership(serverNames, recovery);
+							if (prepareError != PREPARED) {
+								error = prepareError;
+								continue;
+							}
+						}
+						if (undecidedSlot != 0 && undecidedSlot >= nextSlot) {
+							// The prepare phase recovered nothing in the slot, so the batch was not chosen there
+							learner.forgetResponse(undecidedSlot);
+							undecidedSlot = 0;
+						}
+						if (undecidedSlot == 0) {
+							ballot = proposalId;
+							slot = nextSlot++;
+						}
+					}
+					if (!recovery.isEmpty()) {
+						long recoveryError = recover(serverNames, recovery);
+						if (recoveryError != PREPARED) {
+							error = recoveryError;
+							continue;
+						}
+					}
+					if (undecidedSlot == 0) {
+						CompletableFuture<long[]> response = learner.expectResponse(slot);
+						int countAccept = attemptAccept(serverNames, ballot, slot, frame);
+						if (countAccept >= majority) {
+							long[] responses = attemptCommit(serverNames, slot, batch, frame, response);
+							return responses.length == batch.size() ? responses : errorResponses(batch, Response.of(Response.NO_CONSENSUS, 0));
+						}
+						error = logAndReturnErrorResponse(countAccept);
+						undecidedSlot = slot;
+						undecidedBallot = ballot;
+						undecidedResponse = response;
+						continue;
+					}
+				} finally {
+					inFlightSlots.release();
+				}
+			}
+			// The slot is being decided by a leader, either with this batch or with another one
+			long[] outcome = outcomeOf(undecidedSlot, batch, undecidedResponse);
+			if (outcome == null) {
+				error = Response.of(Response.NO_CONSENSUS, 0);
+				if (otherLeader) {
+					// The hinted leader has not decided the slot, so this server tries to lead
+					leaderHint = 0;
+				}
+			} else if (outcome.length == batch.size()) {
+				return outcome;
+			} else {
+				undecidedSlot = 0;
+			}
 		}
+		return errorResponses(batch, error);
+	}
 
-		// Try to accept
-		int countAccept = attemptPhase("accept", serverMap, proposalId, key, value, reqType);
-		if (countAccept <= Constants.NUMBER_OF_SERVERS / 2) {
-			return logAndReturnErrorResponse(countAccept);
+	/**
+	 * Waits until a slot is applied and tells whether it was decided with the specified batch.
+	 * @return The responses of the batch if it was decided in the slot, an empty array if another batch was,
+	 * or null if the slot is not applied in time or was discarded.
+	 */
+	private long[] outcomeOf(int slot, Batch batch, CompletableFuture<long[]> response) {
+		if (!learner.awaitApplied(slot, Constants.PHASE_TIMEOUT_MS)) {
+			return null;
+		}
+		Batch decided = learner.getAppliedBatch(slot);
+		if (decided == null) {
+			return null;
 		}
+		if (decided.getId() != batch.getId()) {
+			return new long[0];
+		}
+		return response.isCompletedExceptionally() ? null : response.getNow(null);
+	}
 
-		// Try to commit
-		return attemptCommit(serverMap, key, value, reqType);
+	/**
+	 * Sleeps for a random time up to a bound that doubles with every attempt (full jitter).
+	 * @param attempt The number of attempts made so far.
+	 * @return True if the sleep completed, false if the thread was interrupted.
+	 */
+	private boolean backOff(int attempt) {
+		long bound = Math.min(Constants.PROPOSE_BACKOFF_MS << Math.min(attempt - 1, 16), Constants.PROPOSE_MAX_BACKOFF_MS);
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+			return true;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
 	}
 
-	private int attemptPhase(String phase, Map<String, String> serverMap, int proposalId, int key, int value, int reqType) {
-		int count = 0;
-		for (Map.Entry<String, String> entry : serverMap.entrySet()) {
-			try {
-				Registry registry = LocateRegistry.getRegistry(entry.getValue(), ServerStoreUtil.getPortNumber(entry.getKey()));
-				IKVStore stub = (IKVStore) registry.lookup(entry.getKey());
-				if ((phase.equals("prepare") && stub.prepare(proposalId, key, value, reqType)) ||
-						(phase.equals("accept") && stub.accept(proposalId, key, value, reqType))) {
-					count++;
+	/**
+	 * Runs the prepare phase for every slot this server has not applied yet, and lists the slots a previous
+	 * leader left undecided, filling holes with no-ops. The caller holds the leadership lock and finishes
+	 * those slots with recover once it has released it.
+	 * @param recovery Receives the slots to finish, in order, with the ballot of this leader.
+	 * @return The error response if the prepare phase failed, PREPARED otherwise.
+	 */
+	private long prepareLeadership(Set<String> serverNames, List<LogEntry> recovery) {
+		long roundStart = System.currentTimeMillis();
+		readLeaseExpiry = 0;
+		proposalId = Ballot.next(proposalId, serverNumber);
+		int ballot = proposalId;
+		int fromSlot = learner.getLastApplied() + 1;
+		List<Promise> promises = attemptPhase(serverNames,
+				stub -> BatchCodec.decodePromise(stub.prepareBatch(serverNumber, ballot, fromSlot)), promise -> {
+					advanceProposalId(promise.getPromisedProposalId());
+					return promise.isGranted();
+				});
+		logger.ackRequestReceived("PREPARE", promises.size());
+		if (promises.size() < majority || ballot != proposalId) {
+			// A higher ballot seen meanwhile preempts this one even if a majority promised it
+			return logAndReturnErrorResponse(promises.size());
+		}
+		leaseExpiry = roundStart + Constants.LEADER_LEASE_MS;
+		leaderHint = serverNumber;
+
+		TreeMap<Integer, LogEntry> recovered = new TreeMap<>();
+		for (Promise promise : promises) {
+			for (LogEntry entry : promise.getAcceptedEntries()) {
+				LogEntry current = recovered.get(entry.getSlot());
+				if (current == null || entry.getProposalId() > current.getProposalId()) {
+					recovered.put(entry.getSlot(), entry);
 				}
-			} catch (SocketTimeoutException | RemoteException | NotBoundException ignored) {
-				// continue to next server
 			}
 		}
-		logger.ackRequestReceived(phase.toUpperCase(), count);
-		return count;
+		nextSlot = recovered.isEmpty() ? fromSlot : Math.max(fromSlot, recovered.lastKey() + 1);
+		for (int slot = fromSlot; slot < nextSlot; slot++) {
+			LogEntry entry = recovered.get(slot);
+			recovery.add(new LogEntry(slot, ballot, entry == null ? Batch.EMPTY : entry.getBatch()));
+		}
+		// Local reads wait until the recovered slots are applied
+		recoveredThrough = nextSlot - 1;
+		return PREPARED;
 	}
 
-	private String attemptCommit(Map<String, String> serverMap, int key, int value, int reqType) {
-		String response = "";
-		for (Map.Entry<String, String> entry : serverMap.entrySet()) {
-			try {
-				Registry registry = LocateRegistry.getRegistry(entry.getValue(), ServerStoreUtil.getPortNumber(entry.getKey()));
-				IKVStore stub = (IKVStore) registry.lookup(entry.getKey());
-				response = stub.commit(key, value, reqType);  // Assuming last valid response is acceptable
-			} catch (SocketTimeoutException | RemoteException | NotBoundException ignored) {
-				// continue to next server
+	/**
+	 * Finishes the slots a previous leader left undecided, up to the pipeline window of them at once,
+	 * and commits each slot a majority accepted. Runs without the leadership lock, so that the slots after
+	 * them are proposed meanwhile.
+	 * @param entries The slots to finish, in order, with the ballot of this leader.
+	 * @return The error response if a slot was not accepted by a majority, PREPARED otherwise.
+	 */
+	private long recover(Set<String> serverNames, List<LogEntry> entries) {
+		for (int from = 0; from < entries.size(); from += PIPELINE_WINDOW) {
+			List<LogEntry> window = entries.subList(from, Math.min(from + PIPELINE_WINDOW, entries.size()));
+			List<byte[]> frames = new ArrayList<>(window.size());
+			for (LogEntry entry : window) {
+				frames.add(BatchCodec.encode(entry.getBatch()));
 			}
+			int[] countAccepts = attemptAccepts(serverNames, window, frames);
+			for (int i = 0; i < window.size(); i++) {
+				if (countAccepts[i] < majority) {
+					return logAndReturnErrorResponse(countAccepts[i]);
+				}
+				// The future of a proposer still waiting for the slot is completed once the learner applies it,
+				// so it must not be replaced or forgotten here
+				learner.commit(window.get(i).getSlot(), window.get(i).getBatch());
+				broadcastCommit(serverNames, window.get(i).getSlot(), frames.get(i));
+			}
+		}
+		return PREPARED;
+	}
+
+	/**
+	 * Runs the accept phase for one slot of the log, renewing the lease if a majority accepts
+	 * and giving up the leadership otherwise.
+	 * @return The number of servers that accepted the operation.
+	 */
+	private int attemptAccept(Set<String> serverNames, int ballot, int slot, byte[] frame) {
+		long roundStart = System.currentTimeMillis();
+		int countAccept = attemptPhase(serverNames, stub -> stub.acceptBatch(ballot, slot, frame), promised -> {
+			advanceProposalId(promised);
+			return promised == ballot;
+		}).size();
+		logger.ackRequestReceived("ACCEPT", countAccept);
+		synchronized (leadershipLock) {
+			if (ballot == proposalId) {
+				leaseExpiry = countAccept < majority ? 0 : roundStart + Constants.LEADER_LEASE_MS;
+				readLeaseExpiry = countAccept < majority ? 0 : readLeaseExpiry;
+			}
+		}
+		return countAccept;
+	}
+
+	/**
+	 * Runs the accept phase for several slots at once under one ballot, as attemptAccept does for one slot,
+	 * renewing the lease if a majority accepts every slot and giving up the leadership otherwise.
+	 * @param entries The slots, with the ballot to accept them under.
+	 * @param frames The encoded batch of each slot.
+	 * @return The number of servers that accepted each slot.
+	 */
+	private int[] attemptAccepts(Set<String> serverNames, List<LogEntry> entries, List<byte[]> frames) {
+		long roundStart = System.currentTimeMillis();
+		int ballot = entries.get(0).getProposalId();
+		// Each reply is the index of its slot if accepted, or minus one minus the index otherwise
+		CompletionService<Integer> replies = new ExecutorCompletionService<>(fanOutExecutor);
+		int[] countAccepts = new int[entries.size()];
+		int[] pending = new int[entries.size()];
+		for (int i = 0; i < entries.size(); i++) {
+			int index = i;
+			int slot = entries.get(i).getSlot();
+			byte[] frame = frames.get(i);
+			for (String name : serverNames) {
+				if (!phaseTracker.trySend(name)) {
+					continue;
+				}
+				pending[i]++;
+				replies.submit(() -> {
+					try {
+						int promised = peers.call(name, stub -> stub.acceptBatch(ballot, slot, frame));
+						advanceProposalId(promised);
+						return promised == ballot ? index : -1 - index;
+					} catch (RemoteException | SocketTimeoutException | RuntimeException e) {
+						return -1 - index;
+					} finally {
+						phaseTracker.finished(name);
+					}
+				});
+			}
+		}
+
+		long deadline = roundStart + Constants.PHASE_TIMEOUT_MS;
+		int undecided = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			undecided += isUndecided(countAccepts[i], pending[i]) ? 1 : 0;
+		}
+		while (undecided > 0) {
+			Future<Integer> reply = nextReply(replies, deadline);
+			if (reply == null) {
+				break;
+			}
+			int result = resultOf(reply);
+			int index = result >= 0 ? result : -1 - result;
+			boolean wasUndecided = isUndecided(countAccepts[index], pending[index]);
+			pending[index]--;
+			countAccepts[index] += result >= 0 ? 1 : 0;
+			if (wasUndecided && !isUndecided(countAccepts[index], pending[index])) {
+				undecided--;
+			}
+		}
+
+		boolean accepted = true;
+		for (int countAccept : countAccepts) {
+			logger.ackRequestReceived("ACCEPT", countAccept);
+			accepted &= countAccept >= majority;
+		}
+		synchronized (leadershipLock) {
+			if (ballot == proposalId) {
+				leaseExpiry = accepted ? roundStart + Constants.LEADER_LEASE_MS : 0;
+				readLeaseExpiry = accepted ? readLeaseExpiry : 0;
+			}
+		}
+		return countAccepts;
+	}
+
+	/**
+	 * Tells whether a slot may still reach a majority of accepts and has not reached it yet.
+	 */
+	private boolean isUndecided(int countAccept, int pending) {
+		return countAccept < majority && countAccept + pending >= majority;
+	}
+
+	/**
+	 * Forwards an operation to the leader, which proposes it on behalf of this server.
+	 * @param leaderNumber The number of the leader server.
+	 * @param key The key involved in the operation.
+	 * @param value The value associated with the key.
+	 * @param reqType The type of request (1 for get, 2 for put, 3 for delete).
+	 * @return The response of the leader, with the index the leader had applied once the operation was done.
+	 * @throws RemoteException If the leader could not be reached.
+	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
+	 */
+	public Result forward(int leaderNumber, int key, int value, int reqType) throws RemoteException, SocketTimeoutException {
+		String leaderName = ServerStoreUtil.getServerName(leaderNumber);
+		logger.paxosLog("Forwarding the request to the leader " + leaderName + ".");
+		Result result = peers.call(leaderName, stub -> stub.propose(key, value, reqType));
+		forwardedIndex.accumulateAndGet(result.getAppliedIndex(), Math::max);
+		return result;
+	}
+
+	/**
+	 * Forwards a batch to the leader, which proposes it without forwarding it again.
+	 * @param leaderNumber The number of the leader server.
+	 * @param frame The operations, encoded with {@link BatchCodec#encode(Batch)}.
+	 * @return The responses of the leader.
+	 * @throws RemoteException If the leader could not be reached.
+	 * @throws SocketTimeoutException If a socket timeout occurs during communication.
+	 */
+	public long[] forwardBatch(int leaderNumber, byte[] frame) throws RemoteException, SocketTimeoutException {
+		String leaderName = ServerStoreUtil.getServerName(leaderNumber);
+		logger.paxosLog("Forwarding the batch to the leader " + leaderName + ".");
+		BatchResult result = peers.call(leaderName, stub -> stub.proposeBatch(frame));
+		forwardedIndex.accumulateAndGet(result.getAppliedIndex(), Math::max);
+		return result.getResponses();
+	}
+
+	/**
+	 * Returns the highest index reported by a leader for the operations this server forwarded to it.
+	 * @return The forwarded index, or 0 if none.
+	 */
+	public int getForwardedIndex() {
+		return forwardedIndex.get();
+	}
+
+	/**
+	 * Sends heartbeats to all servers and renews the lease if a majority still recognizes this leader.
+	 */
+	private void sendHeartbeats() {
+		long roundStart = System.currentTimeMillis();
+		int commitIndex = learner.getLastApplied();
+		int ballot;
+		synchronized (leadershipLock) {
+			ballot = proposalId;
+		}
+		int count = attemptPhase(peers.getPeerNames(), stub -> stub.heartbeat(serverNumber, ballot, commitIndex), Boolean.TRUE::equals).size();
+		synchronized (leadershipLock) {
+			if (ballot != proposalId) {
+				return;
+			}
+			if (count >= majority) {
+				leaseExpiry = Math.max(leaseExpiry, roundStart + Constants.LEADER_LEASE_MS);
+				readLeaseExpiry = roundStart + Constants.LEADER_LEASE_MS - Constants.LEASE_READ_MARGIN_MS;
+			} else {
+				leaseExpiry = 0;
+				readLeaseExpiry = 0;
+			}
+		}
+	}
+
+	/**
+	 * Sends a prepare, accept or heartbeat request to all servers concurrently.
+	 * Returns as soon as a majority has replied positively, or as soon as a majority can no longer be reached.
+	 * @return The positive replies received before returning.
+	 */
+	private <T> List<T> attemptPhase(Set<String> serverNames, PeerConnectionManager.RemoteCall<T> request, Predicate<T> isPositive) {
+		CompletionService<T> replies = new ExecutorCompletionService<>(fanOutExecutor);
+		int pending = 0;
+		for (String name : serverNames) {
+			// A server with too many calls in flight, such as a hung one, counts as not replying
+			if (!phaseTracker.trySend(name)) {
+				continue;
+			}
+			pending++;
+			replies.submit(() -> {
+				try {
+					return peers.call(name, request);
+				} finally {
+					phaseTracker.finished(name);
+				}
+			});
+		}
+
+		long deadline = System.currentTimeMillis() + Constants.PHASE_TIMEOUT_MS;
+		List<T> positiveReplies = new ArrayList<>();
+		while (pending > 0 && positiveReplies.size() < majority && positiveReplies.size() + pending >= majority) {
+			Future<T> reply = nextReply(replies, deadline);
+			if (reply == null) {
+				break;
+			}
+			pending--;
+			T result = resultOf(reply);
+			if (result != null && isPositive.test(result)) {
+				positiveReplies.add(result);
+			}
+		}
+		return positiveReplies;
+	}
+
+	/**
+	 * Commits a decided slot to the local learner and sends the commit to the other learners without waiting
+	 * for them: the value is chosen once a majority accepted it, so the client need not wait for any other server.
+	 * @param response The responses of the slot, registered with the learner before the accept phase.
+	 * @return The responses of the batch once the local learner applied it, or an empty array if it timed out.
+	 */
+	private long[] attemptCommit(Set<String> serverNames, int slot, Batch batch, byte[] frame, CompletableFuture<long[]> response) {
+		learner.commit(slot, batch);
+		broadcastCommit(serverNames, slot, frame);
+		try {
+			// Only waits if an earlier slot of the pipeline is not committed locally yet
+			return response.get(Constants.PHASE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			learner.forgetResponse(slot);
+			return new long[0];
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return new long[0];
+		}
+	}
+
+	/**
+	 * Sends the commit of a slot to every other learner in the background.
+	 * A learner that already has too many commits in flight is skipped and catches up later.
+	 */
+	private void broadcastCommit(Set<String> serverNames, int slot, byte[] frame) {
+		String self = ServerStoreUtil.getServerName(serverNumber);
+		for (String name : serverNames) {
+			if (name.equals(self) || !commitTracker.trySend(name)) {
+				continue;
+			}
+			fanOutExecutor.execute(() -> {
+				try {
+					peers.call(name, stub -> stub.commitBatch(slot, frame));
+				} catch (RemoteException | SocketTimeoutException e) {
+					// the learner catches up later
+				} finally {
+					commitTracker.finished(name);
+				}
+			});
 		}
-		return response;
 	}
 
-	private String logAndReturnErrorResponse(int count) {
-		String response = logger.errResponse(count);
-		logger.paxosLog(response);
-		return response;
+	/**
+	 * Waits for the next server to reply, but no longer than the phase deadline.
+	 * @return The completed reply, or null if the deadline passed first.
+	 */
+	private <T> Future<T> nextReply(CompletionService<T> replies, long deadline) {
+		try {
+			return replies.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
 	}
 
+	/**
+	 * Extracts the result of a completed reply.
+	 * @return The result, or null if the server was unreachable or failed.
+	 */
+	private <T> T resultOf(Future<T> reply) {
+		try {
+			return reply.get();
+		} catch (ExecutionException | InterruptedException ignored) {
+			// count it as a negative reply
+			return null;
+		}
+	}
+
+	private long[] errorResponses(Batch batch, long response) {
+		long[] responses = new long[batch.size()];
+		Arrays.fill(responses, response);
+		return responses;
+	}
+
+	private long logAndReturnErrorResponse(int count) {
+		logger.paxosLog(logger.errResponse(count));
+		return Response.of(Response.NO_CONSENSUS, count);
+	}
+
+	/**
+	 * Keeps the leader lease alive by sending heartbeats while this proposer is the leader.
+	 */
 	@Override
 	public void run() {
-		// Implementation here if needed
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(Constants.LEADER_HEARTBEAT_MS);
+			} catch (InterruptedException ie) {
+				return;
+			}
+			if (isLeader()) {
+				sendHeartbeats();
+			}
+		}
 	}
 }
@@ -24,6 +24,9 @@ public class Server1 extends IKVStoreServer {
 			IKVStore stub = (IKVStore) UnicastRemoteObject.exportObject(server, 0);
 			Registry registry = LocateRegistry.createRegistry(Constants.SERVER1_PORT_NO);
 			registry.bind(Constants.SERVER1, stub);
+			if (ServerStoreUtil.useNioTransport()) {
+				new NioServer(server).listen(ServerStoreUtil.getNioPortNumber(Constants.SERVER1));
+			}
 			System.out.println("Server1 is running...");
 		} catch (Exception e) {
 			logger.connectionException();
@@ -24,6 +24,9 @@ public class Server2 extends IKVStoreServer {
 			IKVStore stub = (IKVStore) UnicastRemoteObject.exportObject(server, 0);
 			Registry registry = LocateRegistry.createRegistry(Constants.SERVER2_PORT_NO);
 			registry.bind(Constants.SERVER2, stub);
+			if (ServerStoreUtil.useNioTransport()) {
+				new NioServer(server).listen(ServerStoreUtil.getNioPortNumber(Constants.SERVER2));
+			}
 			System.out.println("Server2 is running...");
 		} catch (Exception e) {
 			logger.connectionException();
@@ -24,6 +24,9 @@ public class Server3 extends IKVStoreServer {
 			IKVStore stub = (IKVStore) UnicastRemoteObject.exportObject(server, 0);
 			Registry registry = LocateRegistry.createRegistry(Constants.SERVER3_PORT_NO);
 			registry.bind(Constants.SERVER3, stub);
+			if (ServerStoreUtil.useNioTransport()) {
+				new NioServer(server).listen(ServerStoreUtil.getNioPortNumber(Constants.SERVER3));
+			}
 			System.out.println("Server3 is running...");
 		} catch (Exception e) {
 			logger.connectionException();
@@ -24,6 +24,9 @@ public class Server4 extends IKVStoreServer {
 			IKVStore stub = (IKVStore) UnicastRemoteObject.exportObject(server, 0);
 			Registry registry = LocateRegistry.createRegistry(Constants.SERVER4_PORT_NO);
 			registry.bind(Constants.SERVER4, stub);
+			if (ServerStoreUtil.useNioTransport()) {
+				new NioServer(server).listen(ServerStoreUtil.getNioPortNumber(Constants.SERVER4));
+			}
 			System.out.println("Server4 is running...");
 		} catch (Exception e) {
 			logger.connectionException();
@@ -24,6 +24,9 @@ public class Server5 extends IKVStoreServer {
 			IKVStore stub = (IKVStore) UnicastRemoteObject.exportObject(server, 0);
 			Registry registry = LocateRegistry.createRegistry(Constants.SERVER5_PORT_NO);
 			registry.bind(Constants.SERVER5, stub);
+			if (ServerStoreUtil.useNioTransport()) {
+				new NioServer(server).listen(ServerStoreUtil.getNioPortNumber(Constants.SERVER5));
+			}
 			System.out.println("Server5 is running...");
 		} catch (Exception e) {
 			logger.connectionException();
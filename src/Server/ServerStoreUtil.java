@@ -1,8 +1,15 @@
 package Server;
 
+import Compute.IKVStore;
+import Compute.NioStub;
+
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -49,5 +56,43 @@ public class ServerStoreUtil {
 			return Constants.SERVER5_PORT_NO;
 		}
 		return 0;
-	} 
+	}
+
+	public static String getServerName(int serverNumber) {
+		return "Server" + serverNumber;
+	}
+
+	/**
+	 * Checks whether clients and servers talk over the NIO transport rather than RMI,
+	 * as selected with -Dpaxos.transport.
+	 * @return True for the NIO transport, false for RMI.
+	 */
+	public static boolean useNioTransport() {
+		return "nio".equalsIgnoreCase(System.getProperty("paxos.transport", Constants.TRANSPORT));
+	}
+
+	/**
+	 * Returns the port a server serves the NIO transport on.
+	 * @param value The name of the server.
+	 * @return The port number.
+	 */
+	public static int getNioPortNumber(String value) {
+		return getPortNumber(value) + Constants.NIO_PORT_OFFSET;
+	}
+
+	/**
+	 * Obtains a stub for a server over the selected transport.
+	 * @param name The name of the server.
+	 * @param host The host of the server.
+	 * @return The stub.
+	 * @throws RemoteException If the server cannot be reached.
+	 * @throws NotBoundException If the server is not bound in its RMI registry.
+	 */
+	public static IKVStore lookup(String name, String host) throws RemoteException, NotBoundException {
+		if (useNioTransport()) {
+			return NioStub.connect(host, getNioPortNumber(name));
+		}
+		Registry registry = LocateRegistry.getRegistry(host, getPortNumber(name));
+		return (IKVStore) registry.lookup(name);
+	}
 }
@@ -0,0 +1,234 @@
+/**
+ * The Snapshot class represents the state of the key-value store as of one applied slot of the log.
+ * It is taken without stopping the learner: each segment of the store is copied either by the snapshot
+ * thread or, if a write reaches the segment first, by that write just before it changes the segment.
+ * A snapshot is written as one sequential file of big-endian ints: a magic number, the slot, the number
+ * of entries, the key and value of each entry, and a CRC32 of everything before it. Restoring reads the
+ * file front to back through a buffer rather than mapping it, since a mapped file stays mapped until
+ * the buffer is collected and cannot be replaced on Windows meanwhile.
+ */
+package Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class Snapshot {
+
+	/** The first int of every snapshot file. */
+	private static final int MAGIC = 0x534E4150;
+
+	/** The number of bytes before the entries: the magic number, the slot and the number of entries. */
+	private static final int HEADER = 3 * Integer.BYTES;
+
+	/** The size of the buffer a snapshot is written and read through; a whole number of entries. */
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	private final int index;
+
+	/** The entries of each segment as key-value pairs, once copied. Guarded by the lock of the segment. */
+	private final int[][] copies;
+
+	/** Whether each segment has been copied. Guarded by the lock of the segment. */
+	private final boolean[] captured;
+
+	/**
+	 * Constructs an empty Snapshot object.
+	 * @param index The last slot applied to the store at the time of the snapshot.
+	 * @param segments The number of segments of the store.
+	 */
+	public Snapshot(int index, int segments) {
+		this.index = index;
+		this.copies = new int[segments][];
+		this.captured = new boolean[segments];
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Copies a segment, unless it was copied before. The caller must hold the lock of the segment
+	 * and call this before the segment changes for the first time after the snapshot.
+	 * @param segment The number of the segment.
+	 * @param store The entries of the segment.
+	 */
+	public void capture(int segment, IntIntStore store) {
+		if (captured[segment]) {
+			return;
+		}
+		int[] pairs = new int[2 * store.size()];
+		int[] next = new int[1];
+		store.forEach((key, value) -> {
+			pairs[next[0]++] = key;
+			pairs[next[0]++] = value;
+		});
+		copies[segment] = pairs;
+		captured[segment] = true;
+	}
+
+	/**
+	 * Writes the snapshot to a file, replacing it atomically. Every segment must have been captured.
+	 * @param file The file of the snapshot.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void writeTo(Path file) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		int entries = 0;
+		for (int[] pairs : copies) {
+			entries += pairs.length / 2;
+		}
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			buffer.putInt(MAGIC).putInt(index).putInt(entries);
+			for (int segment = 0; segment < copies.length; segment++) {
+				for (int pair : copies[segment]) {
+					if (!buffer.hasRemaining()) {
+						crc.update(buffer.array(), 0, buffer.position());
+						drain(channel, buffer);
+					}
+					buffer.putInt(pair);
+				}
+				// The copy is no longer needed once it is in the buffer.
+				copies[segment] = null;
+			}
+			crc.update(buffer.array(), 0, buffer.position());
+			drain(channel, buffer);
+			buffer.putInt((int) crc.getValue());
+			drain(channel, buffer);
+			channel.force(false);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot file, once to check it and once more to pass on its entries.
+	 * @param file The file of the snapshot.
+	 * @param visitor Receives every entry of the snapshot.
+	 * @return The slot of the snapshot, or 0 if there is no valid snapshot file.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static int readFrom(Path file, IntIntStore.EntryVisitor visitor) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		// A snapshot replaced meanwhile stays readable through the channel opened here.
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			int index = check(channel);
+			if (index != 0) {
+				scan(channel, visitor, null);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Returns the slot of a snapshot file.
+	 * @param file The file of the snapshot.
+	 * @return The slot of the snapshot, or 0 if there is no valid snapshot file.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static int indexOf(Path file) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return check(channel);
+		}
+	}
+
+	/**
+	 * Reads part of a snapshot file as it is stored.
+	 * @param file The file of the snapshot.
+	 * @param index The slot the snapshot must be of, or 0 for any slot.
+	 * @param offset The offset of the first byte to read.
+	 * @param length The maximum number of bytes to read.
+	 * @return The bytes read, or none if there is no snapshot of the slot.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static byte[] readChunk(Path file, int index, long offset, int length) throws IOException {
+		if (!Files.exists(file)) {
+			return new byte[0];
+		}
+		// A snapshot replaced meanwhile stays readable through the channel opened here.
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			if (channel.read(header, 0) < HEADER || (index != 0 && header.getInt(Integer.BYTES) != index)) {
+				return new byte[0];
+			}
+			ByteBuffer chunk = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - offset)));
+			readFully(channel, chunk, offset);
+			return chunk.array();
+		}
+	}
+
+	/**
+	 * Checks that a snapshot file is complete.
+	 * @return The slot of the snapshot, or 0 if the file is incomplete or its checksum does not match.
+	 */
+	private static int check(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		if (channel.size() < HEADER + Integer.BYTES || readFully(channel, header, 0) < HEADER) {
+			return 0;
+		}
+		int entries = header.getInt(2 * Integer.BYTES);
+		if (header.getInt(0) != MAGIC || entries < 0 || channel.size() != HEADER + 8L * entries + Integer.BYTES) {
+			return 0;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(header.array());
+		scan(channel, null, crc);
+		ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES);
+		readFully(channel, checksum, channel.size() - Integer.BYTES);
+		return (int) crc.getValue() == checksum.getInt(0) ? header.getInt(Integer.BYTES) : 0;
+	}
+
+	/**
+	 * Reads the entries of a checked snapshot file front to back, passing them to a visitor or
+	 * adding them to a checksum.
+	 */
+	private static void scan(FileChannel channel, IntIntStore.EntryVisitor visitor, CRC32 crc) throws IOException {
+		long end = channel.size() - Integer.BYTES;
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+		for (long offset = HEADER; offset < end; offset += buffer.limit()) {
+			buffer.clear().limit((int) Math.min(BUFFER_BYTES, end - offset));
+			if (readFully(channel, buffer, offset) < buffer.limit()) {
+				throw new IOException("The snapshot ended early.");
+			}
+			if (crc != null) {
+				crc.update(buffer.array(), 0, buffer.limit());
+			} else {
+				for (int i = 0; i < buffer.limit(); i += 2 * Integer.BYTES) {
+					visitor.visit(buffer.getInt(i), buffer.getInt(i + Integer.BYTES));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads from a position of a file until the buffer is full or the file ends.
+	 * @return The number of bytes read.
+	 */
+	private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+			// Read until the buffer is full.
+		}
+		return buffer.position();
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
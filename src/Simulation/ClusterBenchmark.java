@@ -0,0 +1,150 @@
+/**
+ * The ClusterBenchmark class measures the throughput and latency of consensus for clusters of several
+ * sizes, each run in this process on a SimulatedNetwork.
+ * Client threads put distinct keys, spread over all servers, for a fixed time after a warm-up, and the
+ * latencies of the operations that reached consensus are reported with the counts of the network.
+ * The output of the servers is discarded while they run, as printing every operation would dominate the run.
+ * Configured with system properties:
+ * -Dpaxos.sim.sizes (3,5,7,9), -Dpaxos.sim.clients (32), -Dpaxos.sim.seconds (5), -Dpaxos.sim.warmupSeconds (1),
+ * -Dpaxos.sim.seed (1), -Dpaxos.sim.latencyMicros (100), -Dpaxos.sim.jitterMicros (50), -Dpaxos.sim.dropRate (0).
+ */
+package Simulation;
+
+import Compute.IKVStore;
+import Compute.Response;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClusterBenchmark {
+
+	private static final String SIZES = System.getProperty("paxos.sim.sizes", "3,5,7,9");
+	private static final int CLIENTS = Integer.getInteger("paxos.sim.clients", 32);
+	private static final long SECONDS = Long.getLong("paxos.sim.seconds", 5);
+	private static final long WARMUP_SECONDS = Long.getLong("paxos.sim.warmupSeconds", 1);
+	private static final long SEED = Long.getLong("paxos.sim.seed", 1);
+	private static final long LATENCY_MICROS = Long.getLong("paxos.sim.latencyMicros", 100);
+	private static final long JITTER_MICROS = Long.getLong("paxos.sim.jitterMicros", 50);
+	private static final double DROP_RATE = Double.parseDouble(System.getProperty("paxos.sim.dropRate", "0"));
+
+	/**
+	 * Runs the benchmark for every configured cluster size.
+	 * @param args Command-line arguments (not used).
+	 * @throws Exception If a cluster cannot be started.
+	 */
+	public static void main(String[] args) throws Exception {
+		PrintStream report = System.out;
+		report.printf("clients=%d seconds=%d seed=%d latency=%dus jitter=%dus drop=%.4f%n",
+				CLIENTS, SECONDS, SEED, LATENCY_MICROS, JITTER_MICROS, DROP_RATE);
+		for (String size : SIZES.split(",")) {
+			System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+			String line;
+			try {
+				line = run(Integer.parseInt(size.trim()));
+			} finally {
+				System.setOut(report);
+			}
+			report.println(line);
+		}
+	}
+
+	/**
+	 * Runs the load against one cluster.
+	 * @return The line reporting the results.
+	 */
+	private static String run(int size) throws Exception {
+		SimulatedNetwork network = new SimulatedNetwork(SEED);
+		network.setDefaults(LATENCY_MICROS, JITTER_MICROS, DROP_RATE);
+		try (SimulatedCluster cluster = new SimulatedCluster(size, network)) {
+			long start = System.nanoTime();
+			long measureFrom = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+			long end = measureFrom + TimeUnit.SECONDS.toNanos(SECONDS);
+			AtomicInteger failed = new AtomicInteger();
+			List<Client> clients = new ArrayList<>();
+			for (int i = 0; i < CLIENTS; i++) {
+				Client client = new Client(cluster.client(i % size + 1), (i + 1) * 10_000_000, measureFrom, end, failed);
+				clients.add(client);
+				client.start();
+			}
+			long sentBefore = network.getSentCount();
+			long[] latencies = new long[0];
+			for (Client client : clients) {
+				client.join();
+				int offset = latencies.length;
+				latencies = Arrays.copyOf(latencies, offset + client.count);
+				System.arraycopy(client.latencies, 0, latencies, offset, client.count);
+			}
+			Arrays.sort(latencies);
+			return String.format("nodes=%d ops=%d failed=%d throughput=%.0f ops/s p50=%.2f ms p99=%.2f ms max=%.2f ms messages=%d dropped=%d",
+					size, latencies.length, failed.get(), latencies.length / (double) SECONDS,
+					millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)),
+					millis(latencies.length == 0 ? 0 : latencies[latencies.length - 1]),
+					network.getSentCount() - sentBefore, network.getDroppedCount());
+		}
+	}
+
+	private static long percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) (quantile * sorted.length))];
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/** A client putting distinct keys to one server in a loop. */
+	private static final class Client extends Thread {
+
+		private final IKVStore stub;
+		private final int firstKey;
+		private final long measureFrom;
+		private final long end;
+		private final AtomicInteger failed;
+		private long[] latencies = new long[1024];
+		private int count;
+
+		Client(IKVStore stub, int firstKey, long measureFrom, long end, AtomicInteger failed) {
+			super("paxos-sim-client");
+			this.stub = stub;
+			this.firstKey = firstKey;
+			this.measureFrom = measureFrom;
+			this.end = end;
+			this.failed = failed;
+		}
+
+		@Override
+		public void run() {
+			for (int key = firstKey; ; key++) {
+				long sent = System.nanoTime();
+				if (sent >= end) {
+					return;
+				}
+				boolean stored;
+				try {
+					stored = Response.statusOf(stub.put(key, key)) == Response.STORED;
+				} catch (RemoteException e) {
+					stored = false;
+				}
+				if (sent < measureFrom) {
+					continue;
+				}
+				if (!stored) {
+					failed.incrementAndGet();
+					continue;
+				}
+				if (count == latencies.length) {
+					latencies = Arrays.copyOf(latencies, 2 * count);
+				}
+				latencies[count++] = System.nanoTime() - sent;
+			}
+		}
+	}
+}
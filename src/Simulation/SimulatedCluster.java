@@ -0,0 +1,132 @@
+/**
+ * The SimulatedCluster class runs a cluster of any number of servers in one process, connected by a
+ * SimulatedNetwork instead of sockets. Each server keeps its files in its own directory under a temporary
+ * directory, which is deleted when the cluster is closed.
+ */
+package Simulation;
+
+import Compute.IKVStore;
+import Server.IKVStoreServer;
+import Server.PeerConnectionManager;
+import Server.ServerStoreUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.rmi.NotBoundException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class SimulatedCluster implements AutoCloseable {
+
+	/** The host of every server in the server map, which the simulated lookup ignores. */
+	private static final String HOST = "simulated";
+
+	private final SimulatedNetwork network;
+	private final IKVStoreServer[] servers;
+	private final Path directory;
+
+	/**
+	 * Starts a cluster.
+	 * @param size The number of servers, numbered from 1.
+	 * @param seed The seed of the network.
+	 * @throws IOException If the temporary directory cannot be created.
+	 */
+	public SimulatedCluster(int size, long seed) throws IOException {
+		this(size, new SimulatedNetwork(seed));
+	}
+
+	/**
+	 * Starts a cluster on a network configured beforehand.
+	 * @param size The number of servers, numbered from 1.
+	 * @param network The network connecting the servers.
+	 * @throws IOException If the temporary directory cannot be created.
+	 */
+	public SimulatedCluster(int size, SimulatedNetwork network) throws IOException {
+		this.network = network;
+		this.servers = new IKVStoreServer[size + 1];
+		this.directory = Files.createTempDirectory("paxos-sim");
+		Map<String, String> serverMap = new LinkedHashMap<>();
+		for (int i = 1; i <= size; i++) {
+			serverMap.put(ServerStoreUtil.getServerName(i), HOST);
+		}
+		for (int i = 1; i <= size; i++) {
+			String name = ServerStoreUtil.getServerName(i);
+			servers[i] = new IKVStoreServer(i, serverMap, lookupFor(i), directory.resolve(name));
+			network.register(i, servers[i]);
+		}
+	}
+
+	/**
+	 * Returns the number of servers of the cluster.
+	 * @return The size of the cluster.
+	 */
+	public int size() {
+		return servers.length - 1;
+	}
+
+	/**
+	 * Returns the network connecting the servers, to inject latency, losses and partitions.
+	 * @return The network.
+	 */
+	public SimulatedNetwork getNetwork() {
+		return network;
+	}
+
+	/**
+	 * Returns a server of the cluster.
+	 * @param serverNumber The number of the server, from 1.
+	 * @return The server.
+	 */
+	public IKVStoreServer getServer(int serverNumber) {
+		return servers[serverNumber];
+	}
+
+	/**
+	 * Returns a stub a client calls a server with over the network.
+	 * @param serverNumber The number of the server, from 1.
+	 * @return The stub.
+	 */
+	public IKVStore client(int serverNumber) {
+		return network.stub(SimulatedNetwork.CLIENT, serverNumber);
+	}
+
+	/**
+	 * Stops the servers and the network and deletes the files of the servers.
+	 */
+	@Override
+	public void close() {
+		for (int i = 1; i < servers.length; i++) {
+			servers[i].shutdown();
+		}
+		network.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		} catch (IOException e) {
+			// Left to the cleaning of the temporary directory
+		}
+	}
+
+	/**
+	 * Resolves the stubs a server calls the other servers with.
+	 */
+	private PeerConnectionManager.Lookup lookupFor(int from) {
+		return (name, host) -> {
+			int serverNumber = numberOf(name);
+			if (serverNumber < 1 || serverNumber >= servers.length) {
+				throw new NotBoundException(name);
+			}
+			return network.stub(from, serverNumber);
+		};
+	}
+
+	private static int numberOf(String name) {
+		try {
+			return Integer.parseInt(name.substring("Server".length()));
+		} catch (NumberFormatException | IndexOutOfBoundsException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,364 @@
+/**
+ * The SimulatedNetwork class carries the calls of IKVStore between servers running in one process,
+ * in place of RMI or the NIO transport.
+ * Every message of a link from one node to another is delayed by the latency of the link plus a random
+ * jitter, and lost with the drop rate of the link; the node a lost request or reply was meant for sees
+ * the call time out. Nodes in different groups of a partition cannot reach each other at all.
+ * Each link draws its delays and losses from its own random generator, seeded from the seed of the network,
+ * and messages due at the same time are delivered in the order they were sent, so that the same seed
+ * subjects the same sequence of messages on a link to the same faults. The servers themselves still run
+ * on their own threads and clocks, so the interleaving of the links is not replayed exactly.
+ * Arguments and return values are handed over by reference instead of being serialized.
+ */
+package Simulation;
+
+import Compute.IKVStore;
+import Server.PeerConnectionManager;
+
+import java.net.SocketTimeoutException;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SimulatedNetwork {
+
+	/** The node number of clients, which are outside of the cluster and reach every server. */
+	public static final int CLIENT = 0;
+
+	/**
+	 * The maximum time, in milliseconds, a call waits for its reply, as a lost message is never answered.
+	 * It exceeds the phase timeout, since a call forwarded to the leader waits for a whole round of consensus.
+	 */
+	private static final long CALL_TIMEOUT_MS = Long.getLong("paxos.sim.callTimeoutMs", 10000);
+
+	private final long seed;
+
+	/** The servers, by node number. */
+	private final Map<Integer, IKVStore> nodes = new ConcurrentHashMap<>();
+
+	/** The links between nodes, by the pair of node numbers. */
+	private final Map<Long, Link> links = new ConcurrentHashMap<>();
+
+	/** The group of each node listed in the current partition; unlisted nodes share group 0. */
+	private volatile Map<Integer, Integer> partition = Collections.emptyMap();
+
+	private volatile long defaultLatencyMicros;
+	private volatile long defaultJitterMicros;
+	private volatile double defaultDropRate;
+
+	/** The messages in flight, ordered by the time they are due and then by the order they were sent. */
+	private final DelayQueue<Delivery> deliveries = new DelayQueue<>();
+	private final AtomicLong nextSequence = new AtomicLong();
+	private final Thread scheduler;
+
+	/** The threads running calls on the servers; a call may block until it reaches consensus. */
+	private final ExecutorService handlers = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "paxos-sim-handler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicLong sentCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong blockedCount = new AtomicLong();
+
+	/**
+	 * Constructs a SimulatedNetwork object whose links deliver messages at once and lose none.
+	 * @param seed The seed of the random generators of the links.
+	 */
+	public SimulatedNetwork(long seed) {
+		this.seed = seed;
+		this.scheduler = new Thread(this::deliver, "paxos-sim-scheduler");
+		scheduler.setDaemon(true);
+		scheduler.start();
+	}
+
+	/**
+	 * Adds a server to the network.
+	 * @param node The node number of the server, from 1.
+	 * @param server The server the calls to the node are made on.
+	 */
+	public void register(int node, IKVStore server) {
+		nodes.put(node, server);
+	}
+
+	/**
+	 * Sets the latency, jitter and drop rate of every link not configured with setLink.
+	 * @param latencyMicros The one-way delay of a message, in microseconds.
+	 * @param jitterMicros The maximum random delay added to the latency, in microseconds.
+	 * @param dropRate The probability that a message is lost, from 0 to 1.
+	 */
+	public void setDefaults(long latencyMicros, long jitterMicros, double dropRate) {
+		this.defaultLatencyMicros = latencyMicros;
+		this.defaultJitterMicros = jitterMicros;
+		this.defaultDropRate = dropRate;
+	}
+
+	/**
+	 * Sets the latency, jitter and drop rate of the link from one node to another.
+	 * @param from The node sending the messages.
+	 * @param to The node receiving the messages.
+	 * @param latencyMicros The one-way delay of a message, in microseconds.
+	 * @param jitterMicros The maximum random delay added to the latency, in microseconds.
+	 * @param dropRate The probability that a message is lost, from 0 to 1.
+	 */
+	public void setLink(int from, int to, long latencyMicros, long jitterMicros, double dropRate) {
+		link(from, to).configure(latencyMicros, jitterMicros, dropRate);
+	}
+
+	/**
+	 * Splits the servers into groups that cannot reach each other. Servers left out of every group form
+	 * one more group together, and clients reach every server.
+	 * @param groups The node numbers of each group.
+	 */
+	@SafeVarargs
+	public final void partition(Set<Integer>... groups) {
+		Map<Integer, Integer> groupOf = new HashMap<>();
+		for (int i = 0; i < groups.length; i++) {
+			for (int node : groups[i]) {
+				groupOf.put(node, i + 1);
+			}
+		}
+		partition = groupOf;
+	}
+
+	/**
+	 * Cuts a server off from every other server.
+	 * @param node The node number of the server.
+	 */
+	public void isolate(int node) {
+		partition(Collections.singleton(node));
+	}
+
+	/**
+	 * Ends the current partition.
+	 */
+	public void heal() {
+		partition = Collections.emptyMap();
+	}
+
+	/**
+	 * Returns a stub calling a server over this network.
+	 * @param from The node number of the caller, or CLIENT.
+	 * @param to The node number of the server.
+	 * @return The stub.
+	 */
+	public IKVStore stub(int from, int to) {
+		return new SimulatedStub(this, from, to);
+	}
+
+	/**
+	 * Returns the number of messages sent so far, requests and replies alike.
+	 * @return The sent count.
+	 */
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/**
+	 * Returns the number of messages lost so far.
+	 * @return The dropped count.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns the number of calls refused so far because the nodes were partitioned.
+	 * @return The blocked count.
+	 */
+	public long getBlockedCount() {
+		return blockedCount.get();
+	}
+
+	/**
+	 * Stops delivering messages. Calls in flight time out.
+	 */
+	public void close() {
+		scheduler.interrupt();
+		handlers.shutdownNow();
+	}
+
+	/**
+	 * Makes a call on a server and waits for its reply.
+	 * @param from The node number of the caller.
+	 * @param to The node number of the server.
+	 * @param call The call to make.
+	 * @return The reply of the server.
+	 * @throws RemoteException If the nodes are partitioned, a message was lost, or the call threw.
+	 */
+	<T> T call(int from, int to, PeerConnectionManager.RemoteCall<T> call) throws RemoteException {
+		IKVStore target = nodes.get(to);
+		if (target == null) {
+			throw new ConnectException("Node " + to + " is not in the network.");
+		}
+		if (!canReach(from, to)) {
+			blockedCount.incrementAndGet();
+			throw new ConnectException("Node " + to + " is partitioned from node " + from + ".");
+		}
+		CompletableFuture<T> reply = new CompletableFuture<>();
+		send(from, to, () -> handlers.execute(() -> handle(from, to, target, call, reply)));
+		try {
+			return reply.get(CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new RemoteException("No reply from node " + to + " within " + CALL_TIMEOUT_MS + " ms.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RemoteException) {
+				throw (RemoteException) cause;
+			}
+			if (cause instanceof SocketTimeoutException) {
+				throw new RemoteException("Node " + to + " timed out.", cause);
+			}
+			throw new ServerException("Node " + to + " failed: " + cause, cause instanceof Exception ? (Exception) cause : null);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while waiting for node " + to + ".");
+		}
+	}
+
+	/**
+	 * Runs a call that reached its server and sends the reply back.
+	 */
+	private <T> void handle(int from, int to, IKVStore target, PeerConnectionManager.RemoteCall<T> call, CompletableFuture<T> reply) {
+		T result = null;
+		Throwable failure = null;
+		try {
+			result = call.invoke(target);
+		} catch (Exception e) {
+			failure = e;
+		}
+		if (!canReach(to, from)) {
+			// The partition began while the call ran; the caller times out
+			return;
+		}
+		T value = result;
+		Throwable error = failure;
+		send(to, from, () -> {
+			if (error == null) {
+				reply.complete(value);
+			} else {
+				reply.completeExceptionally(error);
+			}
+		});
+	}
+
+	/**
+	 * Sends a message over a link, running its action once it is delivered unless it is lost.
+	 */
+	private void send(int from, int to, Runnable action) {
+		sentCount.incrementAndGet();
+		long delayMicros = link(from, to).sample();
+		if (delayMicros < 0) {
+			droppedCount.incrementAndGet();
+			return;
+		}
+		deliveries.add(new Delivery(System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(delayMicros), nextSequence.getAndIncrement(), action));
+	}
+
+	/**
+	 * Delivers the messages as they fall due, until the network is closed.
+	 */
+	private void deliver() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				deliveries.take().action.run();
+			} catch (InterruptedException ie) {
+				return;
+			} catch (RuntimeException e) {
+				// A handler refused after close; the caller times out
+			}
+		}
+	}
+
+	private boolean canReach(int from, int to) {
+		if (from == CLIENT || to == CLIENT) {
+			return true;
+		}
+		Map<Integer, Integer> groupOf = partition;
+		return groupOf.getOrDefault(from, 0).equals(groupOf.getOrDefault(to, 0));
+	}
+
+	private Link link(int from, int to) {
+		return links.computeIfAbsent((long) from << 32 | to, key -> new Link(new Random(seed * 31 + key)));
+	}
+
+	/** The faults of the messages from one node to another. */
+	private final class Link {
+
+		private final Random random;
+		private boolean configured;
+		private long latencyMicros;
+		private long jitterMicros;
+		private double dropRate;
+
+		Link(Random random) {
+			this.random = random;
+		}
+
+		synchronized void configure(long latencyMicros, long jitterMicros, double dropRate) {
+			this.configured = true;
+			this.latencyMicros = latencyMicros;
+			this.jitterMicros = jitterMicros;
+			this.dropRate = dropRate;
+		}
+
+		/**
+		 * Draws the fate of the next message of the link.
+		 * @return The delay of the message in microseconds, or -1 if it is lost.
+		 */
+		synchronized long sample() {
+			long latency = configured ? latencyMicros : defaultLatencyMicros;
+			long jitter = configured ? jitterMicros : defaultJitterMicros;
+			double drop = configured ? dropRate : defaultDropRate;
+			// Both draws are always made, so the faults of a message do not depend on the configuration of others
+			double lossDraw = random.nextDouble();
+			double jitterDraw = random.nextDouble();
+			if (lossDraw < drop) {
+				return -1;
+			}
+			return latency + (long) (jitterDraw * (jitter + 1));
+		}
+	}
+
+	/** A message due at a certain time. */
+	private static final class Delivery implements Delayed {
+
+		private final long dueNanos;
+		private final long sequence;
+		private final Runnable action;
+
+		Delivery(long dueNanos, long sequence, Runnable action) {
+			this.dueNanos = dueNanos;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			Delivery delivery = (Delivery) other;
+			int byTime = Long.compare(dueNanos, delivery.dueNanos);
+			return byTime != 0 ? byTime : Long.compare(sequence, delivery.sequence);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * The SimulatedStub class is a client of IKVStore over a SimulatedNetwork instead of RMI.
+ * Each call is sent from the node of the stub to the node of the server, subject to the latency,
+ * losses and partitions of the network.
+ */
+package Simulation;
+
+import Compute.BatchResult;
+import Compute.IKVStore;
+import Compute.Result;
+
+import java.rmi.RemoteException;
+
+public class SimulatedStub implements IKVStore {
+
+	private final SimulatedNetwork network;
+	private final int from;
+	private final int to;
+
+	/**
+	 * Constructs a SimulatedStub object.
+	 * @param network The network carrying the calls.
+	 * @param from The node number of the caller, or SimulatedNetwork.CLIENT.
+	 * @param to The node number of the server.
+	 */
+	SimulatedStub(SimulatedNetwork network, int from, int to) {
+		this.network = network;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public long get(int key) throws RemoteException {
+		return network.call(from, to, server -> server.get(key));
+	}
+
+	@Override
+	public long put(int key, int value) throws RemoteException {
+		return network.call(from, to, server -> server.put(key, value));
+	}
+
+	@Override
+	public long delete(int key) throws RemoteException {
+		return network.call(from, to, server -> server.delete(key));
+	}
+
+	@Override
+	public Result staleGet(int key, int minIndex, long maxStalenessMillis) throws RemoteException {
+		return network.call(from, to, server -> server.staleGet(key, minIndex, maxStalenessMillis));
+	}
+
+	@Override
+	public int appliedIndex() throws RemoteException {
+		return network.call(from, to, IKVStore::appliedIndex);
+	}
+
+	@Override
+	public long[] submitBatch(byte[] batch) throws RemoteException {
+		return network.call(from, to, server -> server.submitBatch(batch));
+	}
+
+	@Override
+	public byte[] prepareBatch(int serverNumber, int proposalId, int fromSlot) throws RemoteException {
+		return network.call(from, to, server -> server.prepareBatch(serverNumber, proposalId, fromSlot));
+	}
+
+	@Override
+	public int acceptBatch(int proposalId, int slot, byte[] batch) throws RemoteException {
+		return network.call(from, to, server -> server.acceptBatch(proposalId, slot, batch));
+	}
+
+	@Override
+	public long[] commitBatch(int slot, byte[] batch) throws RemoteException {
+		return network.call(from, to, server -> server.commitBatch(slot, batch));
+	}
+
+	@Override
+	public Result propose(int key, int value, int action) throws RemoteException {
+		return network.call(from, to, server -> server.propose(key, value, action));
+	}
+
+	@Override
+	public BatchResult proposeBatch(byte[] batch) throws RemoteException {
+		return network.call(from, to, server -> server.proposeBatch(batch));
+	}
+
+	@Override
+	public boolean heartbeat(int serverNumber, int proposalId, int commitIndex) throws RemoteException {
+		return network.call(from, to, server -> server.heartbeat(serverNumber, proposalId, commitIndex));
+	}
+
+	@Override
+	public int readIndex() throws RemoteException {
+		return network.call(from, to, IKVStore::readIndex);
+	}
+
+	@Override
+	public byte[] fetchLog(int fromSlot, int maxEntries) throws RemoteException {
+		return network.call(from, to, server -> server.fetchLog(fromSlot, maxEntries));
+	}
+
+	@Override
+	public byte[] fetchSnapshot(int index, long offset, int length) throws RemoteException {
+		return network.call(from, to, server -> server.fetchSnapshot(index, offset, length));
+	}
+}
@@ -1,3 +1,5 @@
 javac Client/*.java
 javac Compute/*.java
 javac Server/*.java
+javac Simulation/*.java
+javac Benchmark/*.java